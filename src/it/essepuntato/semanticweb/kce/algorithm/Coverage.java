@@ -1,27 +1,49 @@
 package it.essepuntato.semanticweb.kce.algorithm;
 
 import it.essepuntato.facility.collection.CollectionFacility;
-import it.essepuntato.facility.list.ListFacility;
 import it.essepuntato.facility.map.MapFacility;
 import it.essepuntato.facility.math.MathFacility;
-import it.essepuntato.facility.set.SetFacility;
 import it.essepuntato.taxonomy.Category;
 import it.essepuntato.taxonomy.HTaxonomy;
-import it.essepuntato.taxonomy.exceptions.NoCategoryException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Silvio Peroni
  */
-public class Coverage implements IAlgorithm {
+public class Coverage implements IStageAlgorithm {
+    
+    /* The outcomes of the evaluation of a swap: ESTIMATED means improving according to the
+     * averages estimated by SwapScreen, and it has still to be verified */
+    private static final int SCREENED = 0;
+    private static final int NOT_IMPROVING = 1;
+    private static final int IMPROVING = 2;
+    private static final int ESTIMATED = 3;
+    private static final int UNDECIDED = 4;
+    
+    /* The number of candidates each thread evaluates before the improving one is looked for */
+    private static final int CANDIDATES_PER_THREAD = 8;
+    
+    /* The name of the rankings in the score table (see CoverageRankings) */
+    public static final String RANKINGS = "CoverageRankings";
+    
+    /* The greatest number of key concepts of the rankings: each number costs a whole
+     * selection of the best coverage, swap procedure included */
+    public static final int MAX_RANKINGS = 50;
     
     private int n = 20;
     private int k = 15;
@@ -41,12 +63,40 @@ public class Coverage implements IAlgorithm {
 	private double coverageWeight = 1.0;
 	private boolean debug = false;
 	private int coverageDistribuctionThreshold = 3000;
+	private boolean approximateCoverage = false;
+	private int rankings = 0; /* The greatest number of key concepts of the rankings */
+	
+	//Metrics
+	private long swapIterations = 0L;
+	private long candidatesEvaluated = 0L;
+	private long candidatesScreened = 0L;
+	private long candidatesCompared = 0L;
+	private long candidatesVerified = 0L;
+	private long gainsEvaluated = 0L;
+	private long workerCpuTime = -1L;
+	private long workerAllocatedBytes = -1L;
+	
+	private int parallelism = 1; /* The number of threads evaluating the swap candidates */
+	
+	/* Used during an evaluation only, if the parallelism is greater than one */
+	private ExecutorService executor = null;
+	
+	/* The marks used by the thread executing the algorithm and by the other threads */
+	private Marks marks = null;
+	private Marks[] threadMarks = null;
     
     public Coverage(String string) {
         this.name = string;
     }
 
     public Map<String, Object> evaluate(HTaxonomy ht, Map<String, String> params) {
+        ScoreTable scores = ScoreTable.fromInfo(ht, this.getRequiredInfo());
+        Map<String, Object> result = this.evaluate(ht, scores, params);
+        scores.writeInfo(ht, this.getProducedInfo());
+        return result;
+    }
+
+    public Map<String, Object> evaluate(HTaxonomy ht, ScoreTable scores, Map<String, String> params) {
         System.out.println("\n-- Coverage Algorithm: BEGIN");
         //HTaxonomy t = ht.clone();
         HTaxonomy t = ht;
@@ -69,6 +119,20 @@ public class Coverage implements IAlgorithm {
         this.coverageWeight  = new Double(params.get("coverageWeight")).doubleValue();
         this.coverageDistribuctionThreshold  = 
         	new Integer(params.get("coverageDistribuctionThreshold")).intValue();
+        this.approximateCoverage = "yes".equals(params.get("approximateCoverage"));
+        this.rankings = 
+                (params.get("rankings") == null ? 0 : 
+                    Math.min(MAX_RANKINGS, Math.max(0, new Integer(params.get("rankings")).intValue())));
+        this.parallelism = 
+                (params.get("parallelism") == null ? 1 : Math.max(1, new Integer(params.get("parallelism")).intValue()));
+        this.swapIterations = 0L;
+        this.candidatesEvaluated = 0L;
+        this.candidatesScreened = 0L;
+        this.candidatesCompared = 0L;
+        this.candidatesVerified = 0L;
+        this.gainsEvaluated = 0L;
+        this.workerCpuTime = -1L;
+        this.workerAllocatedBytes = -1L;
         
         if (debug)System.out.println("Coverage Algorithm:");
         if (debug)System.out.println("\tn = " + this.n);
@@ -86,51 +150,114 @@ public class Coverage implements IAlgorithm {
         if (debug) System.out.println("\tglobalPopularityWeight = " + this.globalPopularityWeight);
         if (debug) System.out.println("\tcoverageWeight = " + this.coverageWeight);
         if (debug) System.out.println("\tcoverageDistribuctionThreshold = " + this.coverageDistribuctionThreshold);
+        if (debug) System.out.println("\tapproximateCoverage = " + this.approximateCoverage);
+        if (debug) System.out.println("\trankings = " + this.rankings);
+        if (debug) System.out.println("\tparallelism = " + this.parallelism);
+        
+        TaxonomyGraph graph = scores.getGraph(t);
         
         if (debug) System.out.println("Coverage Algorithm: retrieving the density");
-        Map<Category,Double> density = this.retrieveDensity(t);
+        double[] density = this.retrieveDensity(scores);
         if (debug) System.out.println("Coverage Algorithm: retrieving the local density");
-        Map<Category,Double> localDensity = this.retrieveLocalDensity(t);
+        double[] localDensity = this.retrieveLocalDensity(scores);
         if (debug) System.out.println("Coverage Algorithm: retrieving the global density");
-        Map<Category,Double> globalDensity = this.retrieveGlobalDensity(t);
+        double[] globalDensity = this.retrieveGlobalDensity(scores);
         if (debug) System.out.println("Coverage Algorithm: retrieving the natural category");
-        Map<Category,Double> naturalCategory = this.retrieveNaturalCategory(t);
+        double[] naturalCategory = this.retrieveNaturalCategory(scores);
         if (debug) System.out.println("Coverage Algorithm: retrieving the basic level");
-        Map<Category,Double> basicLevel = this.retrieveBasicLevel(t);
+        double[] basicLevel = this.retrieveBasicLevel(scores);
         if (debug) System.out.println("Coverage Algorithm: retrieving the name goodness");
-        Map<Category,Double> nameGoodness = this.retrieveNameGoodness(t);
+        double[] nameGoodness = this.retrieveNameGoodness(scores);
         
         if (debug) System.out.println("Coverage Algorithm: calculating the covered category");
-        Map<Category,Set<Category>> covered = this.calculateCovered(t);
+        CoveredSets covered = this.calculateCovered(graph);
         
         if (debug) System.out.println("Coverage Algorithm: calculating the coverage values");
-        Map<Category,Double> coverage = this.calculateCoverage(t, covered);
+        double[] coverage = this.calculateCoverage(graph, scores, covered);
         
         if (debug) System.out.println("Coverage Algorithm: calculating the criteria values");
         Map<Category,Double> criteria = this.calculateCriteriaValues(
-                t, 
+                graph, 
+                scores,
                 density, localDensity, globalDensity, 
                 naturalCategory, basicLevel, nameGoodness, coverage);
         
         if (debug) System.out.println("Coverage Algorithm: calculating the best coverage");
-        Set<Category> bestCoverage = this.findBestCoverage(t, criteria, coverage, covered);
+        WorkerThreadFactory workers = new WorkerThreadFactory("kce-coverage-");
+        this.executor = (this.parallelism > 1 ? 
+                Executors.newFixedThreadPool(this.parallelism, workers) : null);
+        if (this.executor != null) {
+            this.threadMarks = new Marks[this.parallelism];
+            for (int i = 0; i < this.parallelism; i++) {
+                this.threadMarks[i] = new Marks(graph.size());
+            }
+        }
+        try {
+            int maxNumber = Math.min(this.rankings, graph.size());
+            List<List<Category>> groups = this.findBestGroups(MapFacility.copy(criteria), Math.max(this.n, maxNumber));
+            
+            Set<Category> bestCoverage = this.findBestCoverage(graph, criteria, covered, groups, this.n, this.k);
+            String[] coverageIs = scores.createLabels("CoverageIs");
+            if (debug) System.out.println("# Best coverage:");
+            for (Category c : bestCoverage) {
+                coverageIs[scores.getIndex(c)] = "yes";
+                if (debug) System.out.println("\t- " + c.getName());
+            }
+            
+            /* The rankings keep the difference between n and k of the parameters */
+            CoverageRankings rankings = null;
+            if (maxNumber > 0) {
+                if (debug) System.out.println("Coverage Algorithm: calculating the rankings");
+                rankings = new CoverageRankings(scores, maxNumber);
+                for (int number = 1; number <= maxNumber; number++) {
+                    rankings.add(this.findBestCoverage(
+                            graph, criteria, covered, groups, number, number - (this.n - this.k)));
+                }
+            }
+            scores.setRankings(RANKINGS, rankings);
+        } finally {
+            if (this.executor != null) {
+                this.workerCpuTime = workers.getCpuTime();
+                this.workerAllocatedBytes = workers.getAllocatedBytes();
+                this.executor.shutdown();
+                this.executor = null;
+                this.threadMarks = null;
+            }
+        }
         
         Hashtable<String, Object> result = new Hashtable<String,Object>();
         result.put("taxonomy", t);
+        result.put("scores", scores);
+        
+        Map<String, Long> metrics = new Hashtable<String, Long>();
+        metrics.put("categories", new Long(graph.size()));
+        metrics.put("swapIterations", this.swapIterations);
+        metrics.put("candidatesEvaluated", this.candidatesEvaluated);
+        metrics.put("candidatesScreened", this.candidatesScreened);
+        metrics.put("candidatesCompared", this.candidatesCompared);
+        metrics.put("candidatesVerified", this.candidatesVerified);
+        metrics.put("gainsEvaluated", this.gainsEvaluated);
+        metrics.put("rankings", new Long(this.rankings));
+        if (this.parallelism > 1) {
+            metrics.put("workerCpuTime", this.workerCpuTime);
+            metrics.put("workerAllocatedBytes", this.workerAllocatedBytes);
+        }
+        result.put("metrics", metrics);
         
         System.out.println("-- Coverage Algorithm: END\n");
         return result;
     }
 
     private Map<Category, Double> calculateCombinedValues(
-            HTaxonomy t, 
+            TaxonomyGraph graph, 
             Set<Category> setA, 
             Set<Category> setB, 
             Map<Category, Double> criteria,
-            Map<Category, Set<Category>> covered) {
+            CoveredSets covered,
+            Marks marks) {
         Map<Category,Double> result = new Hashtable<Category,Double>();
         
-        Map<Category, Double> contribution = this.calculateContributionValues(t, setA, setB, covered);
+        Map<Category, Double> contribution = this.calculateContributionValues(graph, setA, setB, covered, marks);
         
         double max = MathFacility.maxDouble(new ArrayList<Double>(contribution.values()));
         Iterator<Category> ite = contribution.keySet().iterator();
@@ -155,8 +282,10 @@ public class Coverage implements IAlgorithm {
         return result;
     }
 
+    /* The contribution of a category is the number of the categories it covers that are not
+     * covered by the other categories of the current ones it covers */
     private Map<Category, Double> calculateContributionValues(
-            HTaxonomy t, Set<Category> setA, Set<Category> setB, Map<Category,Set<Category>> covered) {
+            TaxonomyGraph graph, Set<Category> setA, Set<Category> setB, CoveredSets covered, Marks marks) {
         Map<Category,Double> result = new Hashtable<Category,Double>();
         
         Map<Category,Integer> intResult = new Hashtable<Category, Integer>();
@@ -164,24 +293,45 @@ public class Coverage implements IAlgorithm {
         current.addAll(setA);
         current.addAll(setB);
         
+        int currentStamp = marks.nextStamp();
+        int[] indexes = new int[current.size()];
         Iterator<Category> ite = current.iterator();
-        while (ite.hasNext()) {
+        for (int i = 0; ite.hasNext(); i++) {
+            indexes[i] = graph.getIndex(ite.next());
+            marks.current[indexes[i]] = currentStamp;
+        }
+        
+        int[] offsets = covered.offsets;
+        int[] categories = covered.categories;
+        ite = current.iterator();
+        for (int i = 0; ite.hasNext(); i++) {
             Category c = ite.next();
-            Set<Category> cCovered = (Set<Category>) CollectionFacility.copy(covered.get(c));
-            Set<Category> inCoverage = (Set<Category>) SetFacility.intersect(cCovered, current);
+            int from = offsets[indexes[i]];
+            int to = offsets[indexes[i] + 1];
+            
+            /* The union of the categories covered by the current ones covered by c */
+            int removedStamp = marks.nextStamp();
+            for (int j = from; j < to; j++) {
+                int cC = categories[j];
+                if (cC != indexes[i] && marks.current[cC] == currentStamp) {
+                    for (int k = offsets[cC]; k < offsets[cC + 1]; k++) {
+                        marks.removed[categories[k]] = removedStamp;
+                    }
+                }
+            }
             
-            Iterator<Category> inCoverageIterator = inCoverage.iterator();
-            while (inCoverageIterator.hasNext()) {
-                Category cC = inCoverageIterator.next();
-                if (c != cC) {
-                    cCovered.removeAll(covered.get(cC));
+            /* The categories covered by c that are not in the union */
+            int size = 0;
+            for (int j = from; j < to; j++) {
+                if (marks.removed[categories[j]] != removedStamp) {
+                    size++;
                 }
             }
             
-            intResult.put(c, cCovered.size());
+            intResult.put(c, size);
         }
         
-        double sum = new Double(t.getAllCategories().size()).doubleValue();
+        double sum = new Double(graph.size()).doubleValue();
         ite = intResult.keySet().iterator();
         while (ite.hasNext()) {
             Category c = ite.next();
@@ -194,74 +344,81 @@ public class Coverage implements IAlgorithm {
         return result;
     }
 
-    private Map<Category, Double> calculateCoverage(HTaxonomy t, Map<Category, Set<Category>> covered) {
-        Map<Category,Double> result = new Hashtable<Category,Double>();
+    private double[] calculateCoverage(TaxonomyGraph graph, ScoreTable scores, CoveredSets covered) {
+        double[] result = scores.createScores("coverage");
         
-        Iterator<Category> ite = covered.keySet().iterator();
-        Double categories = new Double(t.getAllCategories().size());
-        while (ite.hasNext()) {
-            Category c = ite.next();
-            Double finalCoverage = new Double(new Double(covered.get(c).size()) / categories);
-            try {
-				t.addInfo(c, "coverage", finalCoverage.toString());
-			} catch (NoCategoryException e) {
-				System.err.println("[Coverage: calculateCoverage] ERROR - The category '" + 
-                        c.getName() + "' isn't in the taxonomy.");
-                e.printStackTrace();
-			}
-            result.put(c, finalCoverage);
+        Double categories = new Double(graph.size());
+        double max = 0.0;
+        for (int c = 0; c < graph.size(); c++) {
+            result[c] = new Double(covered.offsets[c + 1] - covered.offsets[c]) / categories;
+            if (result[c] > max) {
+                max = result[c];
+            }
         }
+        scores.setMax("coverage", max);
         
         return result;
     }
 
-    private Map<Category, Set<Category>> calculateCovered(HTaxonomy t) {
-        Map<Category,Set<Category>> result = new Hashtable<Category,Set<Category>>();
+    /* A category covers itself, its direct sub categories and all its super categories */
+    private CoveredSets calculateCovered(TaxonomyGraph graph) {
+        CoveredSets result = new CoveredSets(graph.size());
+        Marks marks = new Marks(graph.size());
+        this.marks = marks;
         
-        Iterator<Category> ite = t.getAllCategories().iterator();
-        while (ite.hasNext()) {
-            Category c = ite.next();
-            try {
-            	Set<Category> set = new HashSet<Category>();
-            	set.add(c);
-            	set.addAll(t.getDirectSubCategories(c));
-            	set.addAll(t.getAllSuperCategories(c));
-
-                result.put(c, set);
-            } catch (NoCategoryException ex) {
-                System.err.println("[Coverage: calculateCovered] ERROR - The category '" + 
-                        c.getName() + "' isn't in the taxonomy.");
-                ex.printStackTrace();
+        int[] subOffsets = graph.getSubOffsets();
+        int[] subCategories = graph.getSubCategories();
+        int[] set = new int[graph.size()];
+        for (int c = 0; c < graph.size(); c++) {
+            int currentStamp = marks.nextStamp();
+            int size = 0;
+            
+            set[size++] = c;
+            marks.current[c] = currentStamp;
+            for (int i = subOffsets[c]; i < subOffsets[c + 1]; i++) {
+                int sub = subCategories[i];
+                if (marks.current[sub] != currentStamp) {
+                    marks.current[sub] = currentStamp;
+                    set[size++] = sub;
+                }
+            }
+            for (int ancestor : graph.getAllSuperCategories(c)) {
+                if (marks.current[ancestor] != currentStamp) {
+                    marks.current[ancestor] = currentStamp;
+                    set[size++] = ancestor;
+                }
             }
+            
+            result.add(c, set, size);
         }
         
         return result;
     }
 
     private Map<Category, Double> calculateCriteriaValues(
-            HTaxonomy t, 
-            Map<Category, Double> density,
-            Map<Category, Double> localDensity,
-            Map<Category, Double> globalDensity,
-            Map<Category, Double> naturalCategory,
-            Map<Category, Double> basicLevel,
-            Map<Category, Double> nameGoodness,
-            Map<Category, Double> coverage) {
+            TaxonomyGraph graph, 
+            ScoreTable scores,
+            double[] density,
+            double[] localDensity,
+            double[] globalDensity,
+            double[] naturalCategory,
+            double[] basicLevel,
+            double[] nameGoodness,
+            double[] coverage) {
         Map<Category,Double> result = new Hashtable<Category,Double>();
+        double[] criteriaColumn = scores.createScores("criteria");
         
-        Iterator<Category> ite = t.getAllCategories().iterator();
-        while (ite.hasNext()) {
-            Category c = ite.next();
+        for (int c = 0; c < graph.size(); c++) {
             Double value = null;
             Double den = null;
             
             if (this.useGlobalLocalValues) {
                 value = new Double(
-                        this.globalDensityWeight * globalDensity.get(c) +
-                        this.localDensityWeight * localDensity.get(c) +
-                        this.basicLevelWeight * basicLevel.get(c) +
-                        this.nameGoodnessWeight * nameGoodness.get(c) +
-                        this.coverageWeight * coverage.get(c)
+                        this.globalDensityWeight * globalDensity[c] +
+                        this.localDensityWeight * localDensity[c] +
+                        this.basicLevelWeight * basicLevel[c] +
+                        this.nameGoodnessWeight * nameGoodness[c] +
+                        this.coverageWeight * coverage[c]
                 );
                 
                 den = new Double(
@@ -270,9 +427,9 @@ public class Coverage implements IAlgorithm {
             }
             else {
                 value = new Double(
-                        this.densityWeight * density.get(c) +
-                        this.naturalWeight * naturalCategory.get(c) +
-                        this.coverageWeight * coverage.get(c)
+                        this.densityWeight * density[c] +
+                        this.naturalWeight * naturalCategory[c] +
+                        this.coverageWeight * coverage[c]
                 );
                 
                 den = new Double(
@@ -282,21 +439,14 @@ public class Coverage implements IAlgorithm {
             }
             
             double curCriteria = MathFacility.normalize(1.0, value.doubleValue(), den.doubleValue());
-            try {
-				t.addInfo(c, "criteria", new Double(curCriteria).toString());
-			} catch (NoCategoryException e) {
-				if (debug) { System.out.println("[Coverage: findBestCoverage] ERROR - The category '" +
-                        c.getName() + "' isn't in the taxonomy"); }
-				e.printStackTrace();
-			}
-            result.put(c, curCriteria);
+            criteriaColumn[c] = curCriteria;
+            result.put(graph.getCategory(c), curCriteria);
         }
         
         /* Normalization considering the max value calculated */
         Double max = MathFacility.maxDouble(new ArrayList<Double>(result.values()));
-        ite = t.getAllCategories().iterator();
-        while (ite.hasNext()) {
-            Category c = ite.next();
+        for (int i = 0; i < graph.size(); i++) {
+            Category c = graph.getCategory(i);
             Double value = 
             		(max.doubleValue() == 0.0 ? 
             				0.0 :
@@ -309,27 +459,38 @@ public class Coverage implements IAlgorithm {
         return result;
     }
 
+    /* The groups are the ones of the best categories (see findBestGroups), containing at
+     * least n categories */
     private Set<Category> findBestCoverage(
-            HTaxonomy t, 
+            TaxonomyGraph graph, 
             Map<Category, Double> criteria, 
-            Map<Category, Double> coverage, 
-            Map<Category, Set<Category>> covered) {
+            CoveredSets covered,
+            List<List<Category>> groups,
+            int n,
+            int k) {
         Set<Category> result = new HashSet<Category>();
         
-        Map<Category, Double> cCriteria = MapFacility.copy(criteria);
-        
-        if (t.getAllCategories().size() > coverageDistribuctionThreshold) { /* We do not use the
+        boolean approximate = false;
+        if (graph.size() > coverageDistribuctionThreshold) { /* We do not use the
         coverage maximization process if we have more than 'coverageDistribuctionThreshold' classes
-        in the taxonomy */
-        	k = n;
+        in the taxonomy, unless it is approximated (if the contribution can only lower while
+        categories are added, see findApproximateCoverage) */
+        	if (this.approximateCoverage && this.coverageContributionWeight >= 0.0 &&
+        			this.criteriaWeight + this.coverageContributionWeight > 0.0) {
+        		approximate = true;
+        	} else {
+        		k = n;
+        	}
         }
         
+        int group = 0;
+        
         boolean passThreshold = false;
-        if (debug) System.out.println("# Finding the best " + this.k + " categories for the coverage");
-        while (result.size() < this.k && !cCriteria.isEmpty() && !passThreshold) {
-            List<Category> list = MapFacility.getKeysWithMaxDoubleValue((Map)cCriteria);
-            if (result.size() + list.size() <= this.n) {
-            	MapFacility.removeAllKeysFromMap(list, cCriteria);
+        if (debug) System.out.println("# Finding the best " + k + " categories for the coverage");
+        while (result.size() < k && group < groups.size() && !passThreshold) {
+            List<Category> list = groups.get(group);
+            if (result.size() + list.size() <= n) {
+            	group++;
                 result.addAll(list);
                 
                 Iterator<Category> ite = list.iterator();
@@ -344,12 +505,15 @@ public class Coverage implements IAlgorithm {
         int newK = result.size();
         if (debug) System.out.println("# " + newK + " categories found");
         
-        if (debug) System.out.println("# Finding the remaining " + (this.n - newK) + " categories for the coverage");
+        if (debug) System.out.println("# Finding the remaining " + (n - newK) + " categories for the coverage");
         Set<Category> remaining = new HashSet<Category>();
-        while (remaining.size() < (this.n - newK) && !cCriteria.isEmpty()) {
-            List<Category> list = MapFacility.getKeysWithMaxDoubleValue((Map)cCriteria);
-            
-            MapFacility.removeAllKeysFromMap(list, cCriteria);
+        if (approximate) {
+            Map<Category, Double> cCriteria = MapFacility.copy(criteria);
+            MapFacility.removeAllKeysFromMap(result, cCriteria);
+            remaining.addAll(this.findApproximateCoverage(graph, result, cCriteria, covered, n - newK));
+        }
+        while (!approximate && remaining.size() < (n - newK) && group < groups.size()) {
+            List<Category> list = groups.get(group++);
             remaining.addAll(list);
             
             Iterator<Category> ite = list.iterator();
@@ -360,14 +524,15 @@ public class Coverage implements IAlgorithm {
         int newN = remaining.size() + newK;
         if (debug) System.out.println("# " + (newN - newK) + " provisory categories found");
         
-        boolean found = false;
+        boolean found = approximate;
         while (!found && (newN - newK) > 0) {
+            this.swapIterations++;
             Map<Category,Double> combinedValues = 
-                    this.calculateCombinedValues(t, result, remaining, criteria, covered);
+                    this.calculateCombinedValues(graph, result, remaining, criteria, covered, this.marks);
             double average = MathFacility.averageDouble(new ArrayList(combinedValues.values()));
             
             Map<Category,Double> contributionValues = 
-                    this.calculateContributionValues(t, result, remaining, covered);
+                    this.calculateContributionValues(graph, result, remaining, covered, this.marks);
             double cAverage = MathFacility.averageDouble(new ArrayList(contributionValues.values()));
             
             if (debug) System.out.println("Current average: " + average);
@@ -376,116 +541,338 @@ public class Coverage implements IAlgorithm {
             MapFacility.removeAllKeysFromMap(result, combinedValues);
             Category worst = (Category) MapFacility.getKeyWithMinDoubleValue((Map)combinedValues);
             
-            Map<Category, Double> excluded = MapFacility.copy(covered);
-            MapFacility.removeAllKeysFromMap(result, excluded);
-            MapFacility.removeAllKeysFromMap(remaining, excluded);
-            excluded.remove(t.getRoot());
+            ArrayList<Category> excluded = new ArrayList<Category>();
+            for (int c = 0; c < graph.size(); c++) {
+                Category category = graph.getCategory(c);
+                if (c != graph.getRoot() && !result.contains(category) && !remaining.contains(category)) {
+                    excluded.add(category);
+                }
+            }
             boolean switched = false;
             
-            List<Category> list = this.sortByName(new ArrayList(excluded.keySet()));
-            Iterator<Category> ite = list.iterator();
-            if (!ite.hasNext())
+            Set<Category> current = new HashSet<Category>(result);
+            current.addAll(remaining);
+            SwapScreen screen = new SwapScreen(graph, covered, current, worst, criteria, 
+                    this.criteriaWeight, this.coverageContributionWeight, this.marks);
+            SwapEvaluation evaluation = new SwapEvaluation(
+                    graph, result, remaining, worst, criteria, covered, average, cAverage, screen);
+            
+            List<Category> list = this.sortByName(excluded);
+            if (list.isEmpty())
             	found = true;
-            while (ite.hasNext() && !switched) {
-                Category c = ite.next();
-                Set<Category> cRemaining = (Set<Category>) CollectionFacility.copy(remaining);
-                cRemaining.remove(worst);
-                cRemaining.add(c);
-                Map<Category,Double> newCombinedValues = 
-                        this.calculateCombinedValues(t, result, cRemaining, criteria, covered);
-                double newAverage = MathFacility.averageDouble(new ArrayList(newCombinedValues.values()));
-                Map<Category,Double> newContributionValues = 
-                        this.calculateContributionValues(t, result, cRemaining, covered);
-                double newCAverage = MathFacility.averageDouble(new ArrayList(newContributionValues.values()));
+            int from = 0;
+            while (from < list.size() && !switched) {
+                int to = Math.min(list.size(), from + 
+                        (this.executor == null ? 1 : this.parallelism * CANDIDATES_PER_THREAD));
+                int[] outcomes = this.evaluateSwaps(evaluation, list, from, to);
                 
-                if (newAverage > average && newCAverage >= cAverage) {
-                    if (debug) { System.out.println("The class '" + worst.getName() + "' is switched with the class '" +
-                            c.getName() + "'"); }
-                    remaining = cRemaining;
-                    switched = true;
-                }
-                else if (!ite.hasNext()) {
-                    found = true;
+                /* The first improving candidate in name order is the one switched. If its
+                 * averages have been estimated only, they are verified before switching it */
+                for (int i = from; i < to && !switched; i++) {
+                    Category c = list.get(i);
+                    this.candidatesEvaluated++;
+                    if (outcomes[i - from] == SCREENED) {
+                        this.candidatesScreened++;
+                    } else if (outcomes[i - from] == ESTIMATED) {
+                        this.candidatesVerified++;
+                        outcomes[i - from] = evaluation.compare(c, this.marks);
+                    } else {
+                        this.candidatesCompared++;
+                    }
+                    
+                    if (outcomes[i - from] == IMPROVING) {
+                        if (debug) { System.out.println("The class '" + worst.getName() + "' is switched with the class '" +
+                                c.getName() + "'"); }
+                        remaining = evaluation.swap(c);
+                        switched = true;
+                    }
+                    else if (i == list.size() - 1) {
+                        found = true;
+                    }
                 }
+                from = to;
             }
         }
         
         result.addAll(remaining);
         
-        //setting the info
-        Iterator<Category> resultIterator = result.iterator();
-        if (debug) System.out.println("# Best coverage:");
-        while (resultIterator.hasNext()) {
-            Category c = resultIterator.next();
-            try {
-                t.addInfo(c, "CoverageIs", "yes");
-                if (debug) System.out.println("\t- " + c.getName());
-            } catch (NoCategoryException ex) {
-                if (debug) { System.out.println("[Coverage: findBestCoverage] ERROR - The category '" +
-                            c.getName() + "' isn't in the taxonomy"); }
-                ex.printStackTrace();
+        return result;
+    }
+
+    /**
+     * This method returns the groups of the categories having the same criteria, from the
+     * greatest criteria, until they contain at least 'size' categories (the categories of
+     * each group follow the order of the map). Only the best 'size' categories are sorted, in
+     * a bounded heap, and then the last group is completed with all the other categories
+     * having its criteria. NaN criteria come last, each one in its own group.
+     *
+     * @param criteria the criteria of the categories.
+     * @param size the number of categories the groups must contain, if possible.
+     * @return the groups of categories, from the greatest criteria.
+     */
+    private List<List<Category>> findBestGroups(Map<Category,Double> criteria, int size) {
+        List<List<Category>> result = new ArrayList<List<Category>>();
+        if (size <= 0) {
+            return result;
+        }
+        
+        final Category[] categories = new Category[criteria.size()];
+        final double[] values = new double[criteria.size()];
+        int count = 0;
+        for (Map.Entry<Category,Double> entry : criteria.entrySet()) {
+            categories[count] = entry.getKey();
+            values[count] = entry.getValue().doubleValue();
+            count++;
+        }
+        
+        /* The worst of the best categories is on the top of the heap */
+        Comparator<Integer> worstFirst = new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int result = compareCriteria(values[a.intValue()], values[b.intValue()]);
+                return (result != 0 ? result : b.intValue() - a.intValue());
+            }
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.max(1, Math.min(size, count)), worstFirst);
+        for (int i = 0; i < count; i++) {
+            if (heap.size() < size) {
+                heap.add(i);
+            } else if (worstFirst.compare(i, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] best = new int[heap.size()];
+        for (int i = best.length - 1; i >= 0; i--) {
+            best[i] = heap.poll().intValue();
+        }
+        
+        /* The best categories, followed by all the ones having the worst criteria among them */
+        List<Integer> ordered = new ArrayList<Integer>();
+        double last = (best.length == size ? values[best[best.length - 1]] : Double.NaN);
+        for (int i = 0; i < best.length; i++) {
+            if (Double.isNaN(last) || values[best[i]] != last) {
+                ordered.add(best[i]);
+            }
+        }
+        if (!Double.isNaN(last)) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] == last) {
+                    ordered.add(i);
+                }
             }
         }
         
+        List<Category> list = null;
+        for (int i = 0; i < ordered.size(); i++) {
+            int index = ordered.get(i).intValue();
+            if (i == 0 || values[index] != values[ordered.get(i - 1).intValue()]) {
+                list = new ArrayList<Category>();
+                result.add(list);
+            }
+            list.add(categories[index]);
+        }
         return result;
     }
 
-    private Map<Category, Double> retrieveDensity(HTaxonomy t) {
-        return this.retrieveValues(t, "DensityFinal");
+    /* Greater than zero if the first criteria is better, NaN being the worst */
+    private static int compareCriteria(double a, double b) {
+        if (a > b) {
+            return 1;
+        } else if (a < b) {
+            return -1;
+        } else if (a == b || (Double.isNaN(a) && Double.isNaN(b))) {
+            return 0;
+        } else {
+            return (Double.isNaN(a) ? -1 : 1);
+        }
     }
 
-    private Map<Category, Double> retrieveGlobalDensity(HTaxonomy t) {
-        return this.retrieveValues(t, "DensityGlobal");
+    /**
+     * This method selects the categories to add to the ones already selected one at a time,
+     * as the one that increases the most the criteria plus the number of the categories
+     * covered (normalised on the max number of categories a category covers). The increase
+     * of a category can only lower while categories are added, thus the increases are kept
+     * in a priority queue and a category is evaluated again only when it reaches the top of
+     * the queue with an increase worked out before the last addition (lazy greedy). Equal
+     * increases are broken by name.
+     *
+     * @param graph the structure of the taxonomy.
+     * @param selected the categories already selected.
+     * @param candidates the criteria of the categories that can be added.
+     * @param covered the categories covered by each category.
+     * @param size the number of categories to add.
+     * @return the categories added.
+     */
+    private Set<Category> findApproximateCoverage(
+            TaxonomyGraph graph, 
+            Set<Category> selected, 
+            Map<Category,Double> candidates, 
+            CoveredSets covered,
+            int size) {
+        Set<Category> result = new HashSet<Category>();
+        int[] offsets = covered.offsets;
+        int[] categories = covered.categories;
+        
+        /* The categories covered by the selected ones */
+        int coveredStamp = this.marks.nextStamp();
+        for (Category c : selected) {
+            int index = graph.getIndex(c);
+            for (int j = offsets[index]; j < offsets[index + 1]; j++) {
+                this.marks.current[categories[j]] = coveredStamp;
+            }
+        }
+        
+        int maxCovered = 1;
+        for (int c = 0; c < graph.size(); c++) {
+            maxCovered = Math.max(maxCovered, offsets[c + 1] - offsets[c]);
+        }
+        
+        final List<Category> list = this.sortByName(new ArrayList<Category>(candidates.keySet()));
+        final double[] gains = new double[list.size()];
+        int[] evaluated = new int[list.size()]; /* The additions before the last evaluation */
+        int[] indexes = new int[list.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(
+                Math.max(1, list.size()),
+                new Comparator<Integer>() {
+                    public int compare(Integer a, Integer b) {
+                        int result = Double.compare(gains[b.intValue()], gains[a.intValue()]);
+                        return (result != 0 ? result : a.intValue() - b.intValue());
+                    }
+                });
+        for (int i = 0; i < list.size(); i++) {
+            indexes[i] = graph.getIndex(list.get(i));
+            gains[i] = this.calculateGain(
+                    candidates.get(list.get(i)).doubleValue(), indexes[i], covered, coveredStamp, maxCovered);
+            queue.add(i);
+        }
+        
+        while (result.size() < size && !queue.isEmpty()) {
+            int i = queue.poll().intValue();
+            if (evaluated[i] == result.size()) {
+                result.add(list.get(i));
+                for (int j = offsets[indexes[i]]; j < offsets[indexes[i] + 1]; j++) {
+                    this.marks.current[categories[j]] = coveredStamp;
+                }
+                if (debug) System.out.println("\tadded a new category in the coverage set: " + list.get(i).getName());
+            } else {
+                gains[i] = this.calculateGain(
+                        candidates.get(list.get(i)).doubleValue(), indexes[i], covered, coveredStamp, maxCovered);
+                evaluated[i] = result.size();
+                queue.add(i);
+            }
+        }
+        
+        return result;
     }
 
-    private Map<Category, Double> retrieveGlobalPopularity(HTaxonomy t) {
-        return this.retrieveValues(t, "PopularityGlobal");
+    /* The increase of the criteria plus the categories covered, if the category is added */
+    private double calculateGain(
+            double criteria, int category, CoveredSets covered, int coveredStamp, int maxCovered) {
+        this.gainsEvaluated++;
+        int count = 0;
+        for (int j = covered.offsets[category]; j < covered.offsets[category + 1]; j++) {
+            if (this.marks.current[covered.categories[j]] != coveredStamp) {
+                count++;
+            }
+        }
+        return (this.criteriaWeight * criteria) + 
+                (this.coverageContributionWeight * ((double) count / maxCovered));
     }
 
-    private Map<Category, Double> retrieveLocalDensity(HTaxonomy t) {
-        return this.retrieveValues(t, "DensityLocal");
+    /* It evaluates the swaps with the candidates from 'from' (included) to 'to' (excluded) of
+     * the list. If the parallelism is greater than one the candidates are split among the
+     * threads, each one with its own marks. */
+    private int[] evaluateSwaps(final SwapEvaluation evaluation, final List<Category> list, final int from, final int to) {
+        final int[] result = new int[to - from];
+        if (this.executor == null || to - from == 1) {
+            for (int i = from; i < to; i++) {
+                result[i - from] = evaluation.evaluate(list.get(i), this.marks);
+            }
+            return result;
+        }
+        
+        int threads = Math.min(this.parallelism, to - from);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++) {
+            final int first = from + t;
+            final int step = threads;
+            futures.add(this.executor.submit(new Runnable() {
+                public void run() {
+                    Marks marks = Coverage.this.threadMarks[first - from];
+                    for (int i = first; i < to; i += step) {
+                        result[i - from] = evaluation.evaluate(list.get(i), marks);
+                    }
+                }
+            }));
+        }
+        
+        for (Future<?> future : futures) {
+            this.waitForCandidates(future);
+        }
+        return result;
     }
 
-    private Map<Category, Double> retrieveLocalPopularity(HTaxonomy t) {
-        return this.retrieveValues(t, "PopularityLocal");
+    private void waitForCandidates(Future<?> candidates) {
+    	try {
+    		candidates.get();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new RuntimeException("[Coverage: evaluate] ERROR - Interrupted while waiting for the candidates", e);
+    	} catch (ExecutionException e) {
+    		Throwable cause = e.getCause();
+    		if (cause instanceof RuntimeException) {
+    			throw (RuntimeException) cause;
+    		} else if (cause instanceof Error) {
+    			throw (Error) cause;
+    		} else {
+    			throw new RuntimeException(cause);
+    		}
+    	}
     }
 
-    private Map<Category, Double> retrieveNaturalCategory(HTaxonomy t) {
-        return this.retrieveValues(t, "NaturalCategoryValue");
+    private double[] retrieveDensity(ScoreTable scores) {
+        return this.retrieveValues(scores, "DensityFinal");
+    }
+
+    private double[] retrieveGlobalDensity(ScoreTable scores) {
+        return this.retrieveValues(scores, "DensityGlobal");
+    }
+
+    private double[] retrieveGlobalPopularity(ScoreTable scores) {
+        return this.retrieveValues(scores, "PopularityGlobal");
+    }
+
+    private double[] retrieveLocalDensity(ScoreTable scores) {
+        return this.retrieveValues(scores, "DensityLocal");
+    }
+
+    private double[] retrieveLocalPopularity(ScoreTable scores) {
+        return this.retrieveValues(scores, "PopularityLocal");
+    }
+
+    private double[] retrieveNaturalCategory(ScoreTable scores) {
+        return this.retrieveValues(scores, "NaturalCategoryValue");
     }
     
-    private Map<Category, Double> retrieveNameGoodness(HTaxonomy t) {
-        return this.retrieveValues(t, "NaturalCategoryNameGoodness");
+    private double[] retrieveNameGoodness(ScoreTable scores) {
+        return this.retrieveValues(scores, "NaturalCategoryNameGoodness");
     }
     
-    private Map<Category, Double> retrieveBasicLevel(HTaxonomy t) {
-        return this.retrieveValues(t, "NaturalCategoryBasicLevel");
+    private double[] retrieveBasicLevel(ScoreTable scores) {
+        return this.retrieveValues(scores, "NaturalCategoryBasicLevel");
     }
 
-    private Map<Category, Double> retrievePopularity(HTaxonomy t) {
-        return this.retrieveValues(t, "PopularityFinal");
+    private double[] retrievePopularity(ScoreTable scores) {
+        return this.retrieveValues(scores, "PopularityFinal");
     }
 
-    private Map<Category, Double> retrieveValues(HTaxonomy t, String value) {
-        Map<Category, Double> result = new Hashtable<Category, Double>();
+    /* It returns null if there is no such value */
+    private double[] retrieveValues(ScoreTable scores, String value) {
+        double[] result = scores.getScores(value);
         
-        Iterator<Category> ite = t.getAllCategories().iterator();
-        while (ite.hasNext()) {
-            Category category = ite.next();
-            try {
-                String tmpValue = t.getInfo(category, value);
-                if (tmpValue != null) {
-                    result.put(category, new Double(tmpValue));
-                }
-                else {
-                    System.err.println("[Coverage: retrieveValues] WARNING - The category '" + 
-                        category.getName() + "' has not the value '" + value + "' as its information.");
-                }
-            } catch (NoCategoryException ex) {
-                System.err.println("[Coverage: retrieveValues] ERROR - The category '" + 
-                        category.getName() + "' isn't in the taxonomy.");
-                ex.printStackTrace();
-            }
+        for (int i = 0; result == null && i < scores.size(); i++) {
+            System.err.println("[Coverage: retrieveValues] WARNING - The category '" + 
+                scores.getCategory(i).getName() + "' has not the value '" + value + "' as its information.");
         }
         
         return result;
@@ -513,6 +900,25 @@ public class Coverage implements IAlgorithm {
         return result;
     }
 
+    public Set<String> getRequiredInfo() {
+        Set<String> result = new HashSet<String>();
+        result.add("DensityFinal");
+        result.add("DensityLocal");
+        result.add("DensityGlobal");
+        result.add("NaturalCategoryValue");
+        result.add("NaturalCategoryBasicLevel");
+        result.add("NaturalCategoryNameGoodness");
+        return result;
+    }
+
+    public Set<String> getProducedInfo() {
+        Set<String> result = new HashSet<String>();
+        result.add("coverage");
+        result.add("criteria");
+        result.add("CoverageIs");
+        return result;
+    }
+
     public String getName() {
         return this.name;
     }
@@ -520,4 +926,335 @@ public class Coverage implements IAlgorithm {
     public void setName(String name) {
         this.name = name;
     }
+
+    /* The categories covered by each category, stored in compressed rows: the ones covered by
+     * the category c are categories[offsets[c]] to categories[offsets[c + 1] - 1] */
+    private static class CoveredSets {
+        private int[] offsets = null;
+        private int[] categories = null;
+        
+        public CoveredSets(int size) {
+            this.offsets = new int[size + 1];
+            this.categories = new int[Math.max(16, size * 4)];
+        }
+        
+        /* The rows must be added in order, from the category 0 on */
+        public void add(int category, int[] set, int size) {
+            int from = this.offsets[category];
+            if (from + size > this.categories.length) {
+                int[] newCategories = new int[Math.max(from + size, this.categories.length * 2)];
+                System.arraycopy(this.categories, 0, newCategories, 0, from);
+                this.categories = newCategories;
+            }
+            System.arraycopy(set, 0, this.categories, from, size);
+            this.offsets[category + 1] = from + size;
+        }
+    }
+
+    /* The marks of the categories, valid when equal to the current stamp */
+    private static class Marks {
+        private int[] current = null;
+        private int[] removed = null;
+        private int stamp = 0;
+        
+        public Marks(int size) {
+            this.current = new int[size];
+            this.removed = new int[size];
+        }
+        
+        public int nextStamp() {
+            if (this.stamp == Integer.MAX_VALUE) {
+                Arrays.fill(this.current, 0);
+                Arrays.fill(this.removed, 0);
+                this.stamp = 0;
+            }
+            return ++this.stamp;
+        }
+    }
+
+    /* The swaps of the worst category of the current coverage with the candidates. The
+     * threads evaluating the candidates only read it, each one with its own marks */
+    private class SwapEvaluation {
+        private TaxonomyGraph graph = null;
+        private Set<Category> result = null;
+        private Set<Category> remaining = null;
+        private Category worst = null;
+        private Map<Category,Double> criteria = null;
+        private CoveredSets covered = null;
+        private double average = 0.0;
+        private double cAverage = 0.0;
+        private SwapScreen screen = null;
+        
+        public SwapEvaluation(
+                TaxonomyGraph graph, 
+                Set<Category> result, 
+                Set<Category> remaining, 
+                Category worst, 
+                Map<Category,Double> criteria, 
+                CoveredSets covered, 
+                double average, 
+                double cAverage, 
+                SwapScreen screen) {
+            this.graph = graph;
+            this.result = result;
+            this.remaining = remaining;
+            this.worst = worst;
+            this.criteria = criteria;
+            this.covered = covered;
+            this.average = average;
+            this.cAverage = cAverage;
+            this.screen = screen;
+        }
+        
+        /* The averages are worked out only for the candidates whose estimated ones are too
+         * close to the current ones to tell if they improve the coverage */
+        public int evaluate(Category c, Marks marks) {
+            int result = this.screen.screen(
+                    this.graph.getIndex(c), this.criteria.get(c).doubleValue(), this.average, this.cAverage, marks);
+            return (result == UNDECIDED ? this.compare(c, marks) : result);
+        }
+        
+        /* It works out the averages after the swap as the swap procedure does */
+        public int compare(Category c, Marks marks) {
+            Set<Category> cRemaining = this.swap(c);
+            Map<Category,Double> newCombinedValues = Coverage.this.calculateCombinedValues(
+                    this.graph, this.result, cRemaining, this.criteria, this.covered, marks);
+            double newAverage = MathFacility.averageDouble(new ArrayList(newCombinedValues.values()));
+            Map<Category,Double> newContributionValues = Coverage.this.calculateContributionValues(
+                    this.graph, this.result, cRemaining, this.covered, marks);
+            double newCAverage = MathFacility.averageDouble(new ArrayList(newContributionValues.values()));
+            
+            return (newAverage > this.average && newCAverage >= this.cAverage ? IMPROVING : NOT_IMPROVING);
+        }
+        
+        public Set<Category> swap(Category c) {
+            Set<Category> result = (Set<Category>) CollectionFacility.copy(this.remaining);
+            result.remove(this.worst);
+            result.add(c);
+            return result;
+        }
+    }
+
+    /* It estimates the averages of the combined values and of the contributions after swapping
+     * the worst category of the current coverage with a candidate. Only the contributions of
+     * the current categories covering the worst category or the candidate change, thus for
+     * each current category the number of the other current categories it covers that cover
+     * each of its covered categories is kept, and the swap changes only these counters. The
+     * averages are worked out from the sums of the new contributions: they differ from the
+     * ones of the swap procedure by the rounding errors only, thus a candidate is decided
+     * from them unless they are closer than that to the current averages (e.g. if the sum of
+     * the contributions does not change), and then it is evaluated as usual. */
+    private static class SwapScreen {
+        private static final double TOLERANCE = 1e-9;
+        
+        private CoveredSets covered = null;
+        private int categories = 0;
+        private int worst = -1;
+        private boolean[] worstCovered = null;
+        
+        /* The current categories, and the position of each category among them (or -1) */
+        private int[] members = null;
+        private int[] position = null;
+        
+        /* The counters of a member, aligned with its covered categories, and its contribution
+         * (i.e. the number of its counters that are zero) */
+        private int[] counterOffsets = null;
+        private int[] counters = null;
+        private int[] counts = null;
+        
+        /* The members covering each category */
+        private int[] ownerOffsets = null;
+        private int[] owners = null;
+        
+        private double criteriaSum = 0.0;
+        private double criteriaWeight = 0.0;
+        private double contributionWeight = 0.0;
+        private double combinedTolerance = 0.0;
+        
+        /* The members covering the worst category */
+        private boolean[] worstOwners = null;
+        
+        public SwapScreen(
+                TaxonomyGraph graph, 
+                CoveredSets covered, 
+                Set<Category> current, 
+                Category worst, 
+                Map<Category,Double> criteria,
+                double criteriaWeight,
+                double contributionWeight,
+                Marks marks) {
+            int[] offsets = covered.offsets;
+            int[] rows = covered.categories;
+            this.covered = covered;
+            this.categories = graph.size();
+            this.criteriaWeight = criteriaWeight;
+            this.contributionWeight = contributionWeight;
+            
+            this.position = new int[graph.size()];
+            Arrays.fill(this.position, -1);
+            this.members = new int[current.size()];
+            int size = 0;
+            for (Category category : current) {
+                this.members[size] = graph.getIndex(category);
+                this.position[this.members[size]] = size;
+                if (category != worst) {
+                    this.criteriaSum += criteria.get(category).doubleValue();
+                }
+                size++;
+            }
+            this.worst = graph.getIndex(worst);
+            this.worstCovered = new boolean[graph.size()];
+            for (int j = offsets[this.worst]; j < offsets[this.worst + 1]; j++) {
+                this.worstCovered[rows[j]] = true;
+            }
+            
+            /* The counters of each member */
+            this.counterOffsets = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                int member = this.members[i];
+                this.counterOffsets[i + 1] = this.counterOffsets[i] + (offsets[member + 1] - offsets[member]);
+            }
+            this.counters = new int[this.counterOffsets[size]];
+            this.counts = new int[size];
+            int[] slot = new int[graph.size()];
+            for (int i = 0; i < size; i++) {
+                int member = this.members[i];
+                int stamp = marks.nextStamp();
+                for (int j = offsets[member]; j < offsets[member + 1]; j++) {
+                    marks.current[rows[j]] = stamp;
+                    slot[rows[j]] = this.counterOffsets[i] + (j - offsets[member]);
+                }
+                for (int j = offsets[member]; j < offsets[member + 1]; j++) {
+                    int other = rows[j];
+                    if (other != member && this.position[other] >= 0) {
+                        for (int k = offsets[other]; k < offsets[other + 1]; k++) {
+                            if (marks.current[rows[k]] == stamp) {
+                                this.counters[slot[rows[k]]]++;
+                            }
+                        }
+                    }
+                }
+                for (int j = this.counterOffsets[i]; j < this.counterOffsets[i + 1]; j++) {
+                    if (this.counters[j] == 0) {
+                        this.counts[i]++;
+                    }
+                }
+            }
+            
+            /* The owners of each category */
+            this.ownerOffsets = new int[graph.size() + 1];
+            for (int member : this.members) {
+                for (int j = offsets[member]; j < offsets[member + 1]; j++) {
+                    this.ownerOffsets[rows[j] + 1]++;
+                }
+            }
+            for (int i = 0; i < graph.size(); i++) {
+                this.ownerOffsets[i + 1] += this.ownerOffsets[i];
+            }
+            this.owners = new int[this.ownerOffsets[graph.size()]];
+            int[] next = new int[graph.size()];
+            System.arraycopy(this.ownerOffsets, 0, next, 0, graph.size());
+            for (int i = 0; i < size; i++) {
+                int member = this.members[i];
+                for (int j = offsets[member]; j < offsets[member + 1]; j++) {
+                    this.owners[next[rows[j]]++] = i;
+                }
+            }
+            
+            /* The combined values are at most this far from zero */
+            double maxCriteria = 0.0;
+            for (Double value : criteria.values()) {
+                maxCriteria = Math.max(maxCriteria, Math.abs(value.doubleValue()));
+            }
+            this.combinedTolerance = TOLERANCE * (1.0 + 
+                    (Math.abs(criteriaWeight) * maxCriteria + Math.abs(contributionWeight)) / 
+                    Math.abs(criteriaWeight + contributionWeight));
+            
+            this.worstOwners = new boolean[size];
+            for (int j = this.ownerOffsets[this.worst]; j < this.ownerOffsets[this.worst + 1]; j++) {
+                this.worstOwners[this.owners[j]] = true;
+            }
+        }
+        
+        /* It returns SCREENED if the swap surely does not improve both the averages, ESTIMATED
+         * if it surely improves them, UNDECIDED otherwise. The marks are the ones of the thread
+         * calling the method */
+        public int screen(int candidate, double candidateCriteria, double average, double cAverage, Marks marks) {
+            if (this.position[candidate] >= 0) {
+                return UNDECIDED;
+            }
+            int[] offsets = this.covered.offsets;
+            int[] rows = this.covered.categories;
+            int stamp = marks.nextStamp();
+            int worstPosition = this.position[this.worst];
+            
+            /* The members covering the candidate, and the categories the candidate covers */
+            for (int j = this.ownerOffsets[candidate]; j < this.ownerOffsets[candidate + 1]; j++) {
+                marks.removed[this.members[this.owners[j]]] = stamp;
+            }
+            for (int j = offsets[candidate]; j < offsets[candidate + 1]; j++) {
+                marks.current[rows[j]] = stamp;
+            }
+            
+            long sum = 0L;
+            int max = 0;
+            for (int i = 0; i < this.members.length; i++) {
+                if (i == worstPosition) {
+                    continue;
+                }
+                
+                int count = this.counts[i];
+                boolean lostWorst = this.worstOwners[i];
+                boolean gotCandidate = marks.removed[this.members[i]] == stamp;
+                if (lostWorst || gotCandidate) {
+                    int member = this.members[i];
+                    for (int j = this.counterOffsets[i]; j < this.counterOffsets[i + 1]; j++) {
+                        int category = rows[offsets[member] + (j - this.counterOffsets[i])];
+                        int counter = this.counters[j];
+                        int newCounter = counter -
+                                (lostWorst && this.worstCovered[category] ? 1 : 0) + 
+                                (gotCandidate && marks.current[category] == stamp ? 1 : 0);
+                        count += (newCounter == 0 ? 1 : 0) - (counter == 0 ? 1 : 0);
+                    }
+                }
+                
+                sum += count;
+                max = Math.max(max, count);
+            }
+            
+            /* The contribution of the candidate */
+            int unionStamp = marks.nextStamp();
+            for (int j = offsets[candidate]; j < offsets[candidate + 1]; j++) {
+                int other = rows[j];
+                if (other != candidate && other != this.worst && this.position[other] >= 0) {
+                    for (int k = offsets[other]; k < offsets[other + 1]; k++) {
+                        marks.removed[rows[k]] = unionStamp;
+                    }
+                }
+            }
+            int count = 0;
+            for (int j = offsets[candidate]; j < offsets[candidate + 1]; j++) {
+                if (marks.removed[rows[j]] != unionStamp) {
+                    count++;
+                }
+            }
+            sum += count;
+            max = Math.max(max, count);
+            
+            double newCAverage = ((double) sum / this.categories) / this.members.length;
+            double newAverage = 
+                    ((this.criteriaWeight * (this.criteriaSum + candidateCriteria)) + 
+                     (this.contributionWeight * (max == 0 ? 0.0 : (double) sum / max))) / 
+                    (this.criteriaWeight + this.contributionWeight) / this.members.length;
+            
+            /* NB: with NaN values the candidate is undecided */
+            if (newCAverage < cAverage - TOLERANCE || newAverage < average - this.combinedTolerance) {
+                return SCREENED;
+            } else if (newCAverage > cAverage + TOLERANCE && newAverage > average + this.combinedTolerance) {
+                return ESTIMATED;
+            } else {
+                return UNDECIDED;
+            }
+        }
+    }
 }
@@ -0,0 +1,167 @@
+package it.essepuntato.semanticweb.kce.algorithm;
+
+import it.essepuntato.taxonomy.Category;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  <p>
+ *      This class contains the categories the coverage algorithm selects for each number of
+ *      key concepts to extract, from 1 to {@link #getMaxNumber()}. The selections are not
+ *      nested (a category selected for a number may not be selected for a greater one), thus
+ *      all of them are kept one after another in a single array of indexes of a score table
+ *      (see {@link ScoreTable#getIndex(Category)}): the categories selected for the number
+ *      <i>n</i> are the ones from <code>offsets[n - 1]</code> (included) to
+ *      <code>offsets[n]</code> (excluded), sorted by index.
+ *  </p>
+ *  <p>
+ *      A selection is returned in constant time, as a read-only view of the array. The
+ *      rankings can be stored as category information (see {@link #toInfo()}), e.g. to be
+ *      cached together with the other values of the categories.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class CoverageRankings {
+
+	private ScoreTable scores = null;
+	private int[] offsets = null;
+	private int[] indexes = null;
+	private int maxNumber = 0;
+
+	public CoverageRankings(ScoreTable scores, int maxNumber) {
+		this.scores = scores;
+		this.offsets = new int[maxNumber + 1];
+		this.indexes = new int[Math.max(16, maxNumber * 4)];
+	}
+
+	/* The selections must be added in order, from the number 1 on */
+	public void add(Collection<Category> selection) {
+		int from = this.offsets[this.maxNumber];
+		int size = selection.size();
+		if (from + size > this.indexes.length) {
+			int[] newIndexes = new int[Math.max(from + size, this.indexes.length * 2)];
+			System.arraycopy(this.indexes, 0, newIndexes, 0, from);
+			this.indexes = newIndexes;
+		}
+
+		int to = from;
+		for (Category category : selection) {
+			this.indexes[to++] = this.scores.getIndex(category);
+		}
+		Arrays.sort(this.indexes, from, to);
+		this.offsets[++this.maxNumber] = to;
+	}
+
+	/* The greatest number of key concepts for which the selection is available */
+	public int getMaxNumber() {
+		return this.maxNumber;
+	}
+
+	public boolean contains(int number) {
+		return number > 0 && number <= this.maxNumber;
+	}
+
+	/**
+	 * This method returns, for each category selected for some number of key concepts, the
+	 * numbers for which it is selected, in increasing order and separated by commas (e.g.
+	 * "2,3,5").
+	 *
+	 * @return the numbers by category name.
+	 */
+	public Map<String,String> toInfo() {
+		Map<String,StringBuilder> numbers = new HashMap<String,StringBuilder>();
+		for (int number = 1; number <= this.maxNumber; number++) {
+			for (int i = this.offsets[number - 1]; i < this.offsets[number]; i++) {
+				String name = this.scores.getCategory(this.indexes[i]).getName();
+				StringBuilder categoryNumbers = numbers.get(name);
+				if (categoryNumbers == null) {
+					numbers.put(name, new StringBuilder().append(number));
+				} else {
+					categoryNumbers.append(',').append(number);
+				}
+			}
+		}
+
+		Map<String,String> result = new HashMap<String,String>();
+		for (Map.Entry<String,StringBuilder> entry : numbers.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toString());
+		}
+		return result;
+	}
+
+	/**
+	 * This method creates the rankings stored as category information by {@link #toInfo()}.
+	 *
+	 * @param scores the score table of the categories.
+	 * @param info the information of the categories, by category name.
+	 * @param key the name of the information containing the numbers.
+	 * @return the rankings, or null if no category has the information.
+	 * @throws NumberFormatException if the information is not a list of numbers.
+	 */
+	public static CoverageRankings fromInfo(ScoreTable scores, Map<String,Map<String,String>> info, String key) {
+		List<List<Category>> selections = new ArrayList<List<Category>>();
+		for (int i = 0; i < scores.size(); i++) {
+			Category category = scores.getCategory(i);
+			Map<String,String> categoryInfo = info.get(category.getName());
+			String numbers = (categoryInfo == null ? null : categoryInfo.get(key));
+			if (numbers == null) {
+				continue;
+			}
+
+			for (String number : numbers.split(",")) {
+				int value = Integer.parseInt(number.trim());
+				if (value <= 0) {
+					throw new NumberFormatException("The number '" + number + "' is not positive");
+				}
+				while (selections.size() < value) {
+					selections.add(new ArrayList<Category>());
+				}
+				selections.get(value - 1).add(category);
+			}
+		}
+
+		if (selections.isEmpty()) {
+			return null;
+		}
+		CoverageRankings result = new CoverageRankings(scores, selections.size());
+		for (List<Category> selection : selections) {
+			result.add(selection);
+		}
+		return result;
+	}
+
+	/**
+	 * This method returns the categories selected for a number of key concepts.
+	 *
+	 * @param number the number of key concepts, from 1 to {@link #getMaxNumber()}.
+	 * @return a read-only view of the categories selected, sorted by index.
+	 */
+	public List<Category> getSelection(int number) {
+		if (!this.contains(number)) {
+			throw new IndexOutOfBoundsException(
+					"[CoverageRankings: getSelection] ERROR - No selection for " + number + " key concepts");
+		}
+
+		final int from = this.offsets[number - 1];
+		final int to = this.offsets[number];
+		return new AbstractList<Category>() {
+			public Category get(int index) {
+				if (index < 0 || from + index >= to) {
+					throw new IndexOutOfBoundsException();
+				}
+				return CoverageRankings.this.scores.getCategory(CoverageRankings.this.indexes[from + index]);
+			}
+
+			public int size() {
+				return to - from;
+			}
+		};
+	}
+}
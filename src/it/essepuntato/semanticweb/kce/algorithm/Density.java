@@ -1,14 +1,18 @@
 package it.essepuntato.semanticweb.kce.algorithm;
 
-import it.essepuntato.facility.list.ListFacility;
-import it.essepuntato.taxonomy.Category;
 import it.essepuntato.taxonomy.HTaxonomy;
-import it.essepuntato.taxonomy.exceptions.NoCategoryException;
 import it.essepuntato.facility.math.MathFacility;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -38,7 +42,7 @@ import org.w3c.dom.Element;
  * @author Silvio Peroni
  * @version beta 3
  */
-public class Density implements IAlgorithm {
+public class Density implements IStageAlgorithm {
     
     //Paramenters
     private double globalDensityWeight = 1.0;
@@ -54,12 +58,33 @@ public class Density implements IAlgorithm {
     private String name = "";
     private double globalDensityWeightLocally = 0.5;
     private boolean debug = true;
+    private int parallelism = 1; /* The number of threads working out the densities */
+    private boolean distinctSubclasses = false; /* See TaxonomyGraph.countDistinctSubCategories */
+    
+    /* Categories are split in ranges of at least this size */
+    private static final int MIN_RANGE_SIZE = 256;
+    
+    /* Used during an evaluation only, if the parallelism is greater than one */
+    private ExecutorService executor = null;
+    
+    //Metrics
+    private long categoriesProcessed = 0L;
+    private long edgesProcessed = 0L;
+    private long workerCpuTime = -1L;
+    private long workerAllocatedBytes = -1L;
 
     public Density(String string) {
         this.name = string;
     }
 
     public Map<String, Object> evaluate(HTaxonomy ht, Map<String, String> params) {
+        ScoreTable scores = ScoreTable.fromInfo(ht, this.getRequiredInfo());
+        Map<String, Object> result = this.evaluate(ht, scores, params);
+        scores.writeInfo(ht, this.getProducedInfo());
+        return result;
+    }
+
+    public Map<String, Object> evaluate(HTaxonomy ht, ScoreTable scores, Map<String, String> params) {
         System.out.println("\n-- Density Algorithm: BEGIN");
         
         //HTaxonomy t = ht.clone();
@@ -76,6 +101,13 @@ public class Density implements IAlgorithm {
         this.ratio = new Double(params.get("ratio")).doubleValue();
         this.threshold = new Double(params.get("threshold")).doubleValue();
         this.globalDensityWeightLocally = new Double(params.get("globalDensityWeightLocally")).doubleValue();
+        this.parallelism = 
+                (params.get("parallelism") == null ? 1 : Math.max(1, new Integer(params.get("parallelism")).intValue()));
+        this.distinctSubclasses = "yes".equals(params.get("distinctSubclasses"));
+        this.categoriesProcessed = 0L;
+        this.edgesProcessed = 0L;
+        this.workerCpuTime = -1L;
+        this.workerAllocatedBytes = -1L;
         
         if (debug) System.out.println("Density Algorithm:");
         if (debug) System.out.println("\tglobalDensityWeight = " + this.globalDensityWeight);
@@ -89,221 +121,431 @@ public class Density implements IAlgorithm {
         if (debug) System.out.println("\tratio = " + this.ratio);
         if (debug) System.out.println("\tthreshold = " + this.threshold);
         if (debug) System.out.println("\tglobalDensityWeightLocally = " + this.globalDensityWeightLocally);
+        if (debug) System.out.println("\tparallelism = " + this.parallelism);
+        if (debug) System.out.println("\tdistinctSubclasses = " + this.distinctSubclasses);
         
-        if (debug) System.out.println("Density Algorithm: working out the global density");
-        Hashtable<Category,Double> globalDensity = this.calculateGlobalDensity(t);
+        TaxonomyGraph graph = scores.getGraph(t);
         
-        if (debug) System.out.println("Density Algorithm: working out the local density");
-        Hashtable<Category,Double> localDensity = this.calculateLocalDensity(t, globalDensity);
-        
-        if (debug) System.out.println("Density Algorithm: working out the final density");
-        Hashtable<Category,Double> density = this.calculateDensity(t, globalDensity, localDensity);
+        WorkerThreadFactory workers = new WorkerThreadFactory("kce-density-");
+        this.executor = (this.parallelism > 1 ? 
+                Executors.newFixedThreadPool(this.parallelism, workers) : null);
+        try {
+            if (debug) System.out.println("Density Algorithm: working out the global density");
+            double[] globalDensity = this.calculateGlobalDensity(graph, scores);
+            
+            if (debug) System.out.println("Density Algorithm: working out the local density");
+            double[] localDensity = this.calculateLocalDensity(graph, scores, globalDensity);
+            
+            if (debug) System.out.println("Density Algorithm: working out the final density");
+            this.calculateDensity(graph, scores, globalDensity, localDensity);
+        } finally {
+            if (this.executor != null) {
+                this.workerCpuTime = workers.getCpuTime();
+                this.workerAllocatedBytes = workers.getAllocatedBytes();
+                this.executor.shutdown();
+                this.executor = null;
+            }
+        }
         
         Hashtable<String, Object> result = new Hashtable<String,Object>();
         result.put("taxonomy", t);
+        result.put("scores", scores);
+        
+        Map<String, Long> metrics = new Hashtable<String, Long>();
+        metrics.put("categories", this.categoriesProcessed);
+        metrics.put("edges", this.edgesProcessed);
+        if (this.parallelism > 1) {
+            metrics.put("workerCpuTime", this.workerCpuTime);
+            metrics.put("workerAllocatedBytes", this.workerAllocatedBytes);
+        }
+        result.put("metrics", metrics);
         
         System.out.println("-- Density Algorithm: END\n");
         return result;
     }
 
-    private Hashtable<Category,Double> calculateDensity(
-            HTaxonomy t, 
-            Hashtable<Category, Double> globalDensity, 
-            Hashtable<Category, Double> localDensity) {
-        Hashtable<Category,Double> result = new Hashtable<Category, Double>();
+    private double[] calculateDensity(
+            final TaxonomyGraph graph, 
+            ScoreTable scores,
+            final double[] globalDensity, 
+            final double[] localDensity) {
+        final String[] densityIs = scores.createLabels("DensityIs");
+        final double[] result = scores.createScores("DensityFinal");
         
-        Iterator<Category> ite = globalDensity.keySet().iterator();
-        while (ite.hasNext()) {
-            Category c = ite.next();
-            try {
-                double curGlobalDensity = globalDensity.get(c).doubleValue();
-                double curLocalDensity = localDensity.get(c).doubleValue();
-
-                double curDensityTmp = 
-                        (curGlobalDensity * this.globalDensityWeight) 
-                        + 
-                        (curLocalDensity * this.localDensityWeight);
-                double value = 
-                        MathFacility.normalize(
-                        1.0, 
-                        curDensityTmp, 
-                        new Double(this.globalDensityWeight + this.localDensityWeight).doubleValue());
+        this.runOnAllCategories(graph.size(), new RangeTask() {
+            public double run(int from, int to, long[] edges) {
+                for (int c = from; c < to; c++) {
+                    double curDensityTmp = 
+                            (globalDensity[c] * globalDensityWeight) 
+                            + 
+                            (localDensity[c] * localDensityWeight);
+                    double value = 
+                            MathFacility.normalize(
+                            1.0, 
+                            curDensityTmp, 
+                            new Double(globalDensityWeight + localDensityWeight).doubleValue());
 
-                t.addInfo(c, "DensityIs", value > this.threshold ? "yes" : "no");
-                if (debug) System.out.println("\tfinal density for '" + c.getName() + "':" + value);
-                t.addInfo(c, "DensityFinal", Double.toString(value));
-                result.put(c, value);
-            } catch (NoCategoryException ex) {
-                System.err.println("[Density: calculateGlobalDensitty] ERROR - The category '" + 
-                        c.getName() + "' isn't in the taxonomy.");
-                ex.printStackTrace();
+                    densityIs[c] = (value > threshold ? "yes" : "no");
+                    if (debug) System.out.println("\tfinal density for '" + graph.getCategory(c).getName() + "':" + value);
+                    result[c] = value;
+                }
+                return 0.0;
             }
-        }
+        });
         
         return result;
     }
 
-    private Hashtable<Category,Double> calculateGlobalDensity(HTaxonomy t) {
-        Hashtable<Category,Double> result = new Hashtable<Category, Double>();
+    private double[] calculateGlobalDensity(final TaxonomyGraph graph, ScoreTable scores) {
+        final double[] result = scores.createScores("DensityGlobal");
         
-        double maxGlobalDensity = Double.MIN_VALUE;
+        /* The indirect sub categories are counted only if they are considered. They are the
+         * ones the taxonomy stores, unless all the distinct ones are asked for: they can be
+         * more if the taxonomy has multiple inheritance, thus changing the densities */
+        final int[] allSubCategories = 
+                (indirectSubclassesWeight == 0.0 ? null :
+                    (this.distinctSubclasses ? graph.countDistinctSubCategories() : graph.countAllSubCategories()));
         
-        Iterator<Category> ite = t.getAllCategories().iterator();
-        while (ite.hasNext()) {
-            Category cur = ite.next();
-            if (debug) System.out.println("Considering category '" + cur.getName() +"'");
-            
-            /* The root category hasn't global density */
-            if (cur == t.getRoot()) {
-                result.put(cur, new Double(0.0));
-            } 
-            else {
-                try {
-                    double curDensityTmp = 
-                            /*(t.getDirectSubCategories(cur).size() * this.categoryWeight) +*/
-                    		(t.getDirectSubCategories(cur).size() * this.directSubclassesWeight) +
-                    		(
-                    				(t.getAllSubCategories(cur).size() - t.getDirectSubCategories(cur).size()) * 
-                    				this.indirectSubclassesWeight) +
-                            (t.getPropertiesByDomain(cur).size() * this.propertyWeight) +
-                            (t.getDirectInstances(cur).size() * this.instanceWeight);
-
-                    /* Normalized by max.num. sub categories (bad case: flat ontology), 
-                     * max.num.properties, max.num.instances */
-                    double max = 
-                    		/*((t.getAllCategories().size() - 1) * this.categoryWeight) +*/
-                            ((t.getAllCategories().size() - 1) * 
-                            		(this.directSubclassesWeight + this.indirectSubclassesWeight)) + //max of subcategories
-                            (t.getAllProperties().size() * this.propertyWeight) + //max of properties
-                            (t.getAllInstances().size() * this.instanceWeight); //max of instances
+        /* Normalized by max.num. sub categories (bad case: flat ontology), 
+         * max.num.properties, max.num.instances */
+        final double max = 
+        		/*((t.getAllCategories().size() - 1) * this.categoryWeight) +*/
+                ((graph.size() - 1) * 
+                		(this.directSubclassesWeight + this.indirectSubclassesWeight)) + //max of subcategories
+                (graph.getPropertyCount() * this.propertyWeight) + //max of properties
+                (graph.getInstanceCount() * this.instanceWeight); //max of instances
+        
+        /* I work out the global density for each category, and the max of them */
+        final double maxGlobalDensity = this.runOnAllCategories(graph.size(), new RangeTask() {
+            public double run(int from, int to, long[] edges) {
+                double maxGlobalDensity = Double.MIN_VALUE;
+                
+                for (int cur = from; cur < to; cur++) {
+                    if (debug) System.out.println("Considering category '" + graph.getCategory(cur).getName() +"'");
+                    
+                    /* The root category hasn't global density */
+                    if (cur == graph.getRoot()) {
+                        result[cur] = 0.0;
+                    } 
+                    else {
+                        int directSubCategories = graph.countDirectSubCategories(cur);
+                        int subCategories = 
+                                (allSubCategories != null ? allSubCategories[cur] : directSubCategories);
+                        double curDensityTmp = 
+                                /*(t.getDirectSubCategories(cur).size() * this.categoryWeight) +*/
+                        		(directSubCategories * directSubclassesWeight) +
+                        		(
+                        				(subCategories - directSubCategories) * 
+                        				indirectSubclassesWeight) +
+                                (graph.countProperties(cur) * propertyWeight) +
+                                (graph.countDirectInstances(cur) * instanceWeight);
 
-                    double curDensity = MathFacility.normalize(1.0, curDensityTmp, max);
+                        double curDensity = MathFacility.normalize(1.0, curDensityTmp, max);
 
-                    result.put(cur, new Double(curDensity));
-                    if (curDensity > maxGlobalDensity) {
-                        maxGlobalDensity = curDensity;
+                        result[cur] = curDensity;
+                        if (curDensity > maxGlobalDensity) {
+                            maxGlobalDensity = curDensity;
+                        }
                     }
-
-                } catch (NoCategoryException ex) {
-                    System.err.println("[Density: calculateGlobalDensity] ERROR - The category '" + 
-                            cur.getName() + "' isn't in the taxonomy.");
-                    ex.printStackTrace();
                 }
+                
+                return maxGlobalDensity;
             }
-        }
+        });
+        this.categoriesProcessed += graph.size();
         
-        /* I normalize the global density for each category */
-        Iterator<Category> iteGlobal = result.keySet().iterator();
-        while (iteGlobal.hasNext()) {
-            Category key = iteGlobal.next();
-            try {
-                double normalizedGlobal = 
-                        MathFacility.normalize(1.0, result.get(key).doubleValue(), maxGlobalDensity);
-                result.put(key, normalizedGlobal);
-                
-                if (debug) System.out.println("\tglobal density for '" + key.getName() + "':" + normalizedGlobal);
-                t.addInfo(key, "DensityGlobal", Double.toString(normalizedGlobal));
-                
-            } catch (NoCategoryException ex) {
-                System.err.println("[Density: calculateGlobalDensity] ERROR - The category '" + 
-                        key.getName() + "' isn't in the taxonomy.");
-                ex.printStackTrace();
+        /* I normalize the global density for each category, recording the max of the
+         * normalized values for the descriptions of the categories */
+        double maxNormalizedGlobal = this.runOnAllCategories(graph.size(), new RangeTask() {
+            public double run(int from, int to, long[] edges) {
+                double maxNormalizedGlobal = 0.0;
+                for (int key = from; key < to; key++) {
+                    double normalizedGlobal = MathFacility.normalize(1.0, result[key], maxGlobalDensity);
+                    result[key] = normalizedGlobal;
+                    if (normalizedGlobal > maxNormalizedGlobal) {
+                        maxNormalizedGlobal = normalizedGlobal;
+                    }
+                    
+                    if (debug) System.out.println("\tglobal density for '" + graph.getCategory(key).getName() + "':" + normalizedGlobal);
+                }
+                return maxNormalizedGlobal;
             }
-        }
+        });
+        scores.setMax("DensityGlobal", maxNormalizedGlobal);
         
         return result;
     }
 
-    private Hashtable<Category, Double> calculateLocalDensity(
-            HTaxonomy t, Hashtable<Category, Double> globalDensity) {
-        Hashtable<Category,Double> result = new Hashtable<Category, Double>();
-        double maxLocalDensity = 0.0;
+    private double[] calculateLocalDensity(
+            final TaxonomyGraph graph, ScoreTable scores, final double[] globalDensity) {
+        final double[] result = scores.createScores("DensityLocal");
         
-        Iterator<Category> ite = globalDensity.keySet().iterator();
-        while (ite.hasNext()) {
-            Category cur = ite.next();
-            
-            /* The root category hasn't the local density */
-            if (cur == t.getRoot()) {
-                result.put(cur, 0.0);
+        final double[] maxDensities = this.propagateMaxDensities(graph, globalDensity);
+        
+        final double maxLocalDensity = this.runOnAllCategories(graph.size(), new RangeTask() {
+            public double run(int from, int to, long[] edges) {
+                double maxLocalDensity = 0.0;
+                
+                /* The categories in the path from the category considered to the current one,
+                 * used only if the max densities of the neighbourhoods can't be propagated */
+                boolean[] viewed = (maxDensities == null ? new boolean[graph.size()] : null);
+                
+                for (int cur = from; cur < to; cur++) {
+                    /* The root category hasn't the local density */
+                    if (cur == graph.getRoot()) {
+                        result[cur] = 0.0;
+                    }
+                    else {
+                        double curDensity = globalDensity[cur];
+                        double maxDensity = (maxDensities != null ? 
+                                maxDensities[cur] :
+                                findMaxDensity(graph, cur, globalDensity, range, ratio, viewed, edges));
+                        double curLocalDensity = 0.0;
+                        if (maxDensity != 0.0) {
+                            curLocalDensity = 
+                                    (curDensity/maxDensity) 
+                                    + 
+                                    (globalDensityWeightLocally * curDensity);
+                        }
+                        result[cur] = curLocalDensity;
+
+                        if (curLocalDensity > maxLocalDensity) {
+                            maxLocalDensity = curLocalDensity;
+                        }
+                    }
+                }
+                
+                return maxLocalDensity;
             }
-            else {
-                double curDensity = globalDensity.get(cur).doubleValue();
-                double maxDensity = this.findMaxDensity(
-                        t, cur, globalDensity, this.range, this.ratio, new ArrayList());
-                double curLocalDensity = 0.0;
-                if (maxDensity != 0.0) {
-                    curLocalDensity = 
-                            (curDensity/maxDensity) 
-                            + 
-                            (this.globalDensityWeightLocally * curDensity);
+        });
+        
+        double maxNormalizedLocal = this.runOnAllCategories(graph.size(), new RangeTask() {
+            public double run(int from, int to, long[] edges) {
+                double maxNormalizedLocal = 0.0;
+                for (int key = from; key < to; key++) {
+                    double normalizedLocalDensity = 
+                    	(maxLocalDensity == 0.0 ? 
+                    			0.0 :
+                				MathFacility.normalize(1.0, result[key], maxLocalDensity)
+        				);
+                    
+                    result[key] = normalizedLocalDensity;
+                    if (normalizedLocalDensity > maxNormalizedLocal) {
+                        maxNormalizedLocal = normalizedLocalDensity;
+                    }
+                    if (debug) System.out.println("\tlocal density for '" + graph.getCategory(key).getName() + "':" + normalizedLocalDensity);
                 }
-                result.put(cur, curLocalDensity);
+                return maxNormalizedLocal;
+            }
+        });
+        scores.setMax("DensityLocal", maxNormalizedLocal);
+        
+        return result;
+    }
 
-                if (curLocalDensity > maxLocalDensity) {
-                    maxLocalDensity = curLocalDensity;
-                }
+    /* The same max densities of findMaxDensity for all the categories, worked out one step at
+     * a time: after h steps 'reachable' contains, for each category, the max global density of
+     * the categories that are at most h steps far from it, and the max density is the greatest
+     * of these values lowered by the ratio of the step. Since a category can be reached through
+     * a shorter path, the longer paths considered by findMaxDensity don't change the result as
+     * long as the ratio and the global densities aren't negative: otherwise it returns null. */
+    private double[] propagateMaxDensities(final TaxonomyGraph graph, double[] globalDensity) {
+        if (!(this.ratio >= 0.0) || this.range < 0) {
+            return null;
+        }
+        for (int cur = 0; cur < graph.size(); cur++) {
+            if (!(globalDensity[cur] >= 0.0)) {
+                return null;
             }
         }
         
-        ite = result.keySet().iterator();
-    	while (ite.hasNext()) {
-            Category key = ite.next();
-            double normalizedLocalDensity = 
-            	(maxLocalDensity == 0.0 ? 
-            			0.0 :
-        				MathFacility.normalize(1.0, result.get(key).doubleValue(), maxLocalDensity)
-				);
+        final int[] subOffsets = graph.getSubOffsets();
+        final int[] subCategories = graph.getSubCategories();
+        final int[] superOffsets = graph.getSuperOffsets();
+        final int[] superCategories = graph.getSuperCategories();
+        
+        final double[] result = new double[graph.size()];
+        double[] reachable = globalDensity.clone();
+        double[] next = new double[graph.size()];
+        boolean changed = true;
+        for (int step = 0; step <= this.range && changed; step++) {
+            if (step > 0) {
+                final double[] previous = reachable;
+                final double[] current = next;
+                changed = this.runOnAllCategories(graph.size(), new RangeTask() {
+                    public double run(int from, int to, long[] edges) {
+                        boolean changed = false;
+                        for (int cur = from; cur < to; cur++) {
+                            double max = previous[cur];
+                            for (int i = subOffsets[cur]; i < subOffsets[cur + 1]; i++) {
+                                max = Math.max(max, previous[subCategories[i]]);
+                            }
+                            for (int i = superOffsets[cur]; i < superOffsets[cur + 1]; i++) {
+                                max = Math.max(max, previous[superCategories[i]]);
+                            }
+                            edges[0] += (subOffsets[cur + 1] - subOffsets[cur]) + 
+                                    (superOffsets[cur + 1] - superOffsets[cur]);
+                            
+                            current[cur] = max;
+                            changed = changed || max != previous[cur];
+                        }
+                        return (changed ? 1.0 : 0.0);
+                    }
+                }) > 0.0;
+                
+                reachable = current;
+                next = previous;
+            }
             
-            result.put(key, normalizedLocalDensity);
-            if (debug) System.out.println("\tlocal density for '" + key.getName() + "':" + normalizedLocalDensity);
-            try {
-                t.addInfo(key, "DensityLocal", Double.toString(normalizedLocalDensity));
-            } catch (NoCategoryException ex) {
-                System.err.println("[Density: calculateLocalDensity] ERROR - The category '" + 
-                        key.getName() + "' isn't in the taxonomy.");
-                ex.printStackTrace();
+            final double currentRatio = 1.0 - (this.ratio * new Double(step).doubleValue());
+            if (step > 0 && currentRatio <= 0.0) { /* No further value can be greater */
+                break;
             }
+            final boolean first = (step == 0);
+            final double[] current = reachable;
+            this.runOnAllCategories(graph.size(), new RangeTask() {
+                public double run(int from, int to, long[] edges) {
+                    for (int cur = from; cur < to; cur++) {
+                        double value = currentRatio * current[cur];
+                        if (first || value > result[cur]) {
+                            result[cur] = value;
+                        }
+                    }
+                    return 0.0;
+                }
+            });
         }
         
         return result;
     }
 
     private double findMaxDensity(
-            HTaxonomy t, 
-            Category cur,
-            Hashtable<Category,Double> globalDensity, 
+            TaxonomyGraph graph, 
+            int cur,
+            double[] globalDensity, 
             int range, 
             double ratio, 
-            ArrayList<Category> viewed) {
+            boolean[] viewed,
+            long[] edges) {
         double currentRatio = 1.0 - (ratio * new Double(this.range - range).doubleValue());
-        double result = (currentRatio < 0.0 ? 0.0 : currentRatio) * globalDensity.get(cur).doubleValue();
-        viewed.add(cur);
+        double result = (currentRatio < 0.0 ? 0.0 : currentRatio) * globalDensity[cur];
         
         if (range != 0) {
-            try {
-                ArrayList<Category> neighbours = new ArrayList<Category>();
-                neighbours.addAll(t.getDirectSubCategories(cur));
-                neighbours.addAll(t.getDirectSuperCategories(cur));
-                neighbours.removeAll(viewed);
-                
-                Iterator<Category> ite = neighbours.iterator();
-                while (ite.hasNext()) {
-                    Category category = ite.next();
-                    ArrayList<Category> newViewed = (ArrayList<Category>) ListFacility.copy(viewed);
-                    double categoryMax = 
-                            this.findMaxDensity(t, category, globalDensity, range - 1, ratio, newViewed);
-                    if (categoryMax > result) {
-                        result = categoryMax;
-                    }
+            viewed[cur] = true;
+            
+            /* The neighbours are the direct sub categories and the direct super categories */
+            int[] subOffsets = graph.getSubOffsets();
+            int[] superOffsets = graph.getSuperOffsets();
+            result = this.findMaxDensity(graph, graph.getSubCategories(), 
+            		subOffsets[cur], subOffsets[cur + 1], globalDensity, range, ratio, viewed, edges, result);
+            result = this.findMaxDensity(graph, graph.getSuperCategories(), 
+            		superOffsets[cur], superOffsets[cur + 1], globalDensity, range, ratio, viewed, edges, result);
+            
+            viewed[cur] = false;
+        }
+        
+        return result;
+    }
+
+    private double findMaxDensity(
+            TaxonomyGraph graph, 
+            int[] neighbours,
+            int from,
+            int to,
+            double[] globalDensity, 
+            int range, 
+            double ratio, 
+            boolean[] viewed,
+            long[] edges,
+            double max) {
+        double result = max;
+        for (int i = from; i < to; i++) {
+            int category = neighbours[i];
+            if (!viewed[category]) {
+                edges[0]++;
+                double categoryMax = 
+                        this.findMaxDensity(graph, category, globalDensity, range - 1, ratio, viewed, edges);
+                if (categoryMax > result) {
+                    result = categoryMax;
                 }
-            } catch (NoCategoryException ex) {
-                System.err.println("[Density: findMaxDensity] ERROR - The category '" + 
-                        cur.getName() + "' isn't in the taxonomy.");
-                ex.printStackTrace();
             }
         }
+        return result;
+    }
+
+    /* It executes the task on all the categories. If the parallelism is greater than one the
+     * categories are split in ranges, executed at the same time, and the values returned are
+     * reduced to their max (as 'if (value > max) max = value', so the result doesn't depend on
+     * the split). Each range has its own counter of the edges processed. */
+    private double runOnAllCategories(int size, final RangeTask task) {
+        if (this.executor == null || size < 2 * MIN_RANGE_SIZE) {
+            long[] edges = new long[1];
+            double result = task.run(0, size, edges);
+            this.edgesProcessed += edges[0];
+            return result;
+        }
         
+        int ranges = Math.min(this.parallelism * 4, size / MIN_RANGE_SIZE);
+        final long[][] edges = new long[ranges][1];
+        List<Future<Double>> futures = new ArrayList<Future<Double>>();
+        for (int i = 0; i < ranges; i++) {
+            final int index = i;
+            final int from = (int) ((long) size * i / ranges);
+            final int to = (int) ((long) size * (i + 1) / ranges);
+            futures.add(this.executor.submit(new Callable<Double>() {
+                public Double call() {
+                    return task.run(from, to, edges[index]);
+                }
+            }));
+        }
+        
+        double result = 0.0;
+        for (int i = 0; i < ranges; i++) {
+            double value = this.waitForRange(futures.get(i));
+            if (i == 0 || value > result) {
+                result = value;
+            }
+            this.edgesProcessed += edges[i][0];
+        }
+        return result;
+    }
+
+    private double waitForRange(Future<Double> range) {
+    	try {
+    		return range.get().doubleValue();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new RuntimeException("[Density: evaluate] ERROR - Interrupted while waiting for the categories", e);
+    	} catch (ExecutionException e) {
+    		Throwable cause = e.getCause();
+    		if (cause instanceof RuntimeException) {
+    			throw (RuntimeException) cause;
+    		} else if (cause instanceof Error) {
+    			throw (Error) cause;
+    		} else {
+    			throw new RuntimeException(cause);
+    		}
+    	}
+    }
+
+    /* A computation over the categories from 'from' (included) to 'to' (excluded) */
+    private interface RangeTask {
+        /* It returns the max of the values worked out, if any, and adds the number of the
+         * edges processed to edges[0] */
+        public double run(int from, int to, long[] edges);
+    }
+
+
+    public Set<String> getRequiredInfo() {
+        return new HashSet<String>();
+    }
+
+    public Set<String> getProducedInfo() {
+        Set<String> result = new HashSet<String>();
+        result.add("DensityGlobal");
+        result.add("DensityLocal");
+        result.add("DensityFinal");
+        result.add("DensityIs");
         return result;
     }
 
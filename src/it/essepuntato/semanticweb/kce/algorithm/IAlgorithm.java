@@ -9,14 +9,18 @@ import java.util.Map;
 public interface IAlgorithm {
     /**
      * This method returns a map. Use the keyword "taxonomy" to retrieve the HTaxonomy
-     * with all the values for the algorithm executed.
+     * with all the values for the algorithm executed, and the keyword "metrics" to retrieve
+     * the counters (a Map&lt;String,Long&gt;, e.g. "categories", "edges" or "paths") of the
+     * work done, if the algorithm provides them. An algorithm that works on other threads too
+     * reports their CPU time, in nanoseconds, as "workerCpuTime" and the bytes they allocated
+     * as "workerAllocatedBytes" (-1 if they are not measurable).
      * 
      * @param ht the taxonomy to evaluate.
      * @param params params that can be used by this algorithm.
      * @return a map containing the result of the algorithm execution.
      */
     public Map<String,Object> evaluate(HTaxonomy ht, Map<String,String> params);
-    
+
     public String getName();
     public void setName(String name);
 }
@@ -0,0 +1,21 @@
+package it.essepuntato.semanticweb.kce.algorithm;
+
+/**
+ *  <p>
+ *      A visitor of the paths from the root of a taxonomy to its leaves (see
+ *      {@link TaxonomyGraph#visitAllPaths(IPathVisitor)}).
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public interface IPathVisitor {
+	/**
+	 * This method is called once for each path, as soon as it is found. The array is reused
+	 * for all the paths, thus it must not be modified or kept after the method returns.
+	 *
+	 * @param path the indexes of the categories of the path, from the root to the leaf.
+	 * @param length the number of categories of the path, i.e. the first items of the array.
+	 * @return true to continue with the next path, false to stop the visit.
+	 */
+	public boolean visit(int[] path, int length);
+}
@@ -0,0 +1,50 @@
+package it.essepuntato.semanticweb.kce.algorithm;
+
+import it.essepuntato.taxonomy.HTaxonomy;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  <p>
+ *      An algorithm that declares the category information it reads and the one it adds, so
+ *      that the engine can execute it as soon as the algorithms it depends on have finished,
+ *      at the same time as the independent ones, and that exchanges the values with them
+ *      through a {@link ScoreTable}. The engine executes an algorithm that implements
+ *      {@link IAlgorithm} only after all the previous ones, and the following ones after it,
+ *      through {@link IAlgorithm#evaluate(HTaxonomy, Map)}.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public interface IStageAlgorithm extends IAlgorithm {
+    /**
+     * This method works as {@link IAlgorithm#evaluate(HTaxonomy, Map)}, but the algorithm
+     * reads the values it needs from the table specified and writes there the values it
+     * produces, without adding them to the category information. The table is also returned
+     * with the keyword "scores".
+     * 
+     * @param ht the taxonomy to evaluate.
+     * @param scores the values of the categories of the taxonomy.
+     * @param params params that can be used by this algorithm.
+     * @return a map containing the result of the algorithm execution.
+     */
+    public Map<String,Object> evaluate(HTaxonomy ht, ScoreTable scores, Map<String,String> params);
+
+    /**
+     * This method returns the names of the category information (see
+     * {@link HTaxonomy#getInfo(it.essepuntato.taxonomy.Category, String)}) this algorithm
+     * reads, i.e. the ones another algorithm must have added before this one is executed.
+     *
+     * @return the names of the category information needed by this algorithm.
+     */
+    public Set<String> getRequiredInfo();
+
+    /**
+     * This method returns the names of the category information this algorithm adds to
+     * the taxonomy.
+     *
+     * @return the names of the category information produced by this algorithm.
+     */
+    public Set<String> getProducedInfo();
+}
@@ -0,0 +1,211 @@
+package it.essepuntato.semanticweb.kce.algorithm;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  <p>
+ *      This class evaluates the simplicity of the names of the categories, as used by the
+ *      natural category algorithm. The local name of a category (the fragment of its URI or,
+ *      if there is no fragment, the last step of its path) is a compound of several parts:
+ *      each '_', '-', '.' or ':' (excluding the one at the beginning of the name, if any)
+ *      separates two parts, and so does every word of a camel case name, in which a sequence
+ *      of capital letters alone is an acronym (i.e. one word). The goodness of a name is
+ *      <code>1 - compoundRatio * (parts - 1)</code>, between 0 and 1.
+ *  </p>
+ *  <p>
+ *      The number of parts of a name is read in a single pass and kept in a cache of bounded
+ *      size, in which the names used less recently are removed first. The analyser returned
+ *      by {@link #getShared()} is shared by all the executions of the algorithm, since the
+ *      same names recur in the different versions of an ontology.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class NameAnalyser {
+
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+
+	private static final NameAnalyser shared = new NameAnalyser(DEFAULT_CACHE_SIZE);
+
+	private Map<String,Integer> cache = null;
+	private long hits = 0L;
+	private long misses = 0L;
+
+	/* A cache size of 0 disables the cache */
+	public NameAnalyser(final int cacheSize) {
+		this.cache = new LinkedHashMap<String,Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String,Integer> eldest) {
+				return this.size() > cacheSize;
+			}
+		};
+	}
+
+	public static NameAnalyser getShared() {
+		return shared;
+	}
+
+	/**
+	 * This method returns the goodness of the name of a category.
+	 *
+	 * @param categoryName the URI of the category.
+	 * @param compoundRatio how much each part of the name after the first one lowers its goodness.
+	 * @return the goodness of the name, from 0 to 1.
+	 */
+	public double getGoodness(String categoryName, double compoundRatio) {
+		double goodness = 1.0 - (compoundRatio * this.countCompounds(categoryName));
+		return (goodness < 0.0 ? 0.0 : Math.min(1.0, goodness));
+	}
+
+	/* The number of the parts of the local name of the category, minus one */
+	public int countCompounds(String categoryName) {
+		synchronized (this.cache) {
+			Integer result = this.cache.get(categoryName);
+			if (result != null) {
+				this.hits++;
+				return result.intValue();
+			}
+			this.misses++;
+		}
+
+		int result = countLocalNameCompounds(getLocalName(categoryName));
+		synchronized (this.cache) {
+			this.cache.put(categoryName, result);
+		}
+		return result;
+	}
+
+	public long getHits() {
+		synchronized (this.cache) {
+			return this.hits;
+		}
+	}
+
+	public long getMisses() {
+		synchronized (this.cache) {
+			return this.misses;
+		}
+	}
+
+	public void clear() {
+		synchronized (this.cache) {
+			this.cache.clear();
+			this.hits = 0L;
+			this.misses = 0L;
+		}
+	}
+
+	/* The fragment of the URI or, if there is none, the last step of its path */
+	public static String getLocalName(String categoryName) {
+		URI nameURI = URI.create(categoryName);
+
+		String name = nameURI.getFragment();
+		if (name == null) { /* The item has not a fragment */
+			String path = nameURI.getPath();
+			if (path != null) {
+				int lastIndex = path.lastIndexOf("/");
+
+				if (lastIndex > -1 && lastIndex + 1 == path.length()) {
+					path = path.substring(0, lastIndex);
+					lastIndex = path.lastIndexOf("/");
+				}
+
+				if (lastIndex > -1) {
+					name = path.substring(lastIndex + 1);
+				} else {
+					name = path;
+				}
+			} else {
+				name = categoryName;
+			}
+		}
+		return name;
+	}
+
+	/* The number of the parts of a local name, minus one */
+	public static int countLocalNameCompounds(String name) {
+		int length = name.length();
+		int separators = 0;
+		int words = 0;
+		boolean inAcronym = false;
+
+		int i = 0;
+		while (i < length) {
+			char c = name.charAt(i);
+			if (isSeparator(c)) {
+				separators++;
+				i++;
+			} else if (isLetter(c)) {
+				/* A word is a letter followed by non-capital letters */
+				int end = i + 1;
+				while (end < length && name.charAt(end) >= 'a' && name.charAt(end) <= 'z') {
+					end++;
+				}
+
+				if (end == i + 1 && c >= 'A' && c <= 'Z') {
+					if (!inAcronym) {
+						words++;
+						inAcronym = true;
+					}
+				} else {
+					words++;
+					inAcronym = false;
+				}
+				i = end;
+			} else {
+				i++;
+			}
+		}
+
+		if (length > 0 && isSeparator(name.charAt(0)) && !hasLineTerminator(name, 1)) {
+			separators--;
+		}
+
+		/* A name without letters is made of the parts separated by spaces */
+		if (words == 0) {
+			words = countSpaceSeparated(name);
+		}
+
+		return separators + words - 1;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == '_' || c == '-' || c == '.' || c == ':';
+	}
+
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean hasLineTerminator(String name, int from) {
+		for (int i = from; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* The same as name.split(" ").length, which drops the trailing empty parts */
+	private static int countSpaceSeparated(String name) {
+		int end = name.length();
+		while (end > 0 && name.charAt(end - 1) == ' ') {
+			end--;
+		}
+		if (end == 0) {
+			return (name.length() == 0 ? 1 : 0);
+		}
+
+		int result = 1;
+		for (int i = 0; i < end; i++) {
+			if (name.charAt(i) == ' ') {
+				result++;
+			}
+		}
+		return result;
+	}
+}
@@ -2,18 +2,16 @@ package it.essepuntato.semanticweb.kce.algorithm;
 
 import it.essepuntato.taxonomy.Category;
 import it.essepuntato.taxonomy.HTaxonomy;
-import it.essepuntato.taxonomy.exceptions.NoCategoryException;
-import it.essepuntato.facility.list.ListFacility;
-import it.essepuntato.facility.map.MapFacility;
 import it.essepuntato.facility.math.MathFacility;
-import it.essepuntato.facility.string.StringFacility;
 
-import java.net.URI;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Vector;
 import java.util.regex.Matcher;
@@ -51,21 +49,37 @@ import org.w3c.dom.Element;
  * @author Silvio Peroni
  * @version beta 2
  */
-public class NaturalCategory implements IAlgorithm {
+public class NaturalCategory implements IStageAlgorithm {
     
     //Parameters
     private int levelWeight = 1;
     private int nameWeight = 1;
     private double threshold = 0.7;
     private double compoundRatio = 0.3;
+    private long maxPaths = 0L; /* Paths visited when there is a cycle, 0 for no limit */
     private String name = "";
     private boolean debug = false;
+    
+    //Metrics
+    private long categoriesProcessed = 0L;
+    private long edgesProcessed = 0L;
+    private long pathsProcessed = 0L;
+    private boolean pathsLimitReached = false;
+    
+    private static final Pattern WORD = Pattern.compile("([A-Z]|[a-z])[a-z]*");
 
     public NaturalCategory(String string) {
         this.name = string;
     }
 
     public Map<String, Object> evaluate(HTaxonomy ht, Map<String, String> params) {
+        ScoreTable scores = ScoreTable.fromInfo(ht, this.getRequiredInfo());
+        Map<String, Object> result = this.evaluate(ht, scores, params);
+        scores.writeInfo(ht, this.getProducedInfo());
+        return result;
+    }
+
+    public Map<String, Object> evaluate(HTaxonomy ht, ScoreTable scores, Map<String, String> params) {
         System.out.println("\n-- Natural Category Algorithm: BEGIN");
         
         //HTaxonomy t = ht.clone();
@@ -75,297 +89,469 @@ public class NaturalCategory implements IAlgorithm {
         this.nameWeight = new Integer(params.get("nameWeight")).intValue();
         this.threshold = new Double(params.get("threshold")).doubleValue();
         this.compoundRatio = new Double(params.get("compoundRatio")).doubleValue();
+        this.categoriesProcessed = t.getAllCategories().size();
+        this.edgesProcessed = 0L;
+        this.maxPaths = (params.get("maxPaths") == null ? 0L : new Long(params.get("maxPaths")).longValue());
+        this.pathsProcessed = 0L;
+        this.pathsLimitReached = false;
         
         if (debug) System.out.println("Natural Category Algorithm:");
         if (debug) System.out.println("\tlevelWeight = " + this.levelWeight);
         if (debug) System.out.println("\tnameWeight = " + this.nameWeight);
         if (debug) System.out.println("\tthreshold = " + this.threshold);
         if (debug) System.out.println("\tcompoundRatio = " + this.compoundRatio);
+        if (debug) System.out.println("\tmaxPaths = " + this.maxPaths);
         
-        if (debug) System.out.println("Natural Category Algorithm: finding all the paths");
-        ArrayList<ArrayList<Category>> paths = 
-                this.calculateAllPaths(t,t.getRoot(),new ArrayList<Category>());
+        TaxonomyGraph graph = scores.getGraph(t);
         
         if (debug) System.out.println("Natural Category Algorithm: calculating the basic levels");
-        Hashtable<Category, Double> basicLevels = 
-                this.calculateBasicLevels(t, paths);
+        double[] basicLevels = this.calculateBasicLevels(graph, scores);
         
         if (debug) { System.out.println("Natural Category Algorithm: calculating the name simplicity of" +
                 "all the taxonomy categories"); }
-        Hashtable<Category, Double> nameGoodness = this.calculateNameGoodness(t);
+        double[] nameGoodness = this.calculateNameGoodness(graph, scores);
         
         if (debug) System.out.println("Natural Category Algorithm: finding all the natural categories");
-        HTaxonomy resultTaxonomy = 
-                this.findNaturalCategories(t, basicLevels, nameGoodness);
+        this.findNaturalCategories(graph, scores, basicLevels, nameGoodness);
+        HTaxonomy resultTaxonomy = t;
         
         Hashtable<String, Object> result = new Hashtable<String,Object>();
         result.put("taxonomy", resultTaxonomy);
+        result.put("scores", scores);
+        
+        Map<String, Long> metrics = new Hashtable<String, Long>();
+        metrics.put("categories", this.categoriesProcessed);
+        metrics.put("edges", this.edgesProcessed);
+        metrics.put("paths", this.pathsProcessed);
+        metrics.put("pathsLimitReached", (this.pathsLimitReached ? 1L : 0L));
+        result.put("metrics", metrics);
         
         System.out.println("-- Natural Category Algorithm: END\n");
         return result;
     }
 
-    private ArrayList<ArrayList<Category>> calculateAllPaths(
-            HTaxonomy t, Category start, ArrayList<Category> path) {
+    private double[] calculateBasicLevels(TaxonomyGraph graph, ScoreTable scores) {
         
-        ArrayList<ArrayList<Category>> result = new ArrayList<ArrayList<Category>>();
+        double[] result = scores.createScores("NaturalCategoryBasicLevel");
         
-        if (!path.contains(start)) {
-        	try {
-                ArrayList<Category> tmp = (ArrayList<Category>) ListFacility.copy(path);
-                tmp.add(start);
-
-                Set<Category> subCategories = t.getDirectSubCategories(start);
-                /* Base case */
-                if (subCategories.isEmpty()) {
-                    result.add(tmp);
-                } else {
-                    Iterator<Category> subCategoryIterator = subCategories.iterator();
-                    while (subCategoryIterator.hasNext()) {
-                        Category sub = subCategoryIterator.next();
-
-                        ArrayList<ArrayList<Category>> subResult = 
-                                this.calculateAllPaths(t, sub, (ArrayList<Category>) ListFacility.copy(tmp));
-
-                        result.addAll(subResult);
+        /* I work out all the basic level weights */
+        if (!this.countMiddleCategories(graph, result)) {
+            /* There is a cycle: only the paths that don't pass twice through the same category
+             * are considered, thus I need to visit them all */
+            if (debug) System.out.println("Natural Category Algorithm: visiting all the paths");
+            final double[] counts = result;
+            boolean completed = graph.visitAllPaths(new IPathVisitor() {
+                public boolean visit(int[] path, int length) {
+                    if (maxPaths > 0L && pathsProcessed >= maxPaths) {
+                        return false;
                     }
+                    pathsProcessed++;
+                    edgesProcessed += length - 1;
+                    countMiddleCategories(path, length, counts);
+                    return true;
                 }
-            } catch (NoCategoryException ex) {
-                if (debug) { System.out.println("[NaturalCategory: calculateAllPaths] ERROR - The '" 
-                            + start.getName() + "' isn't in the" +
-                        "taxonomy"); }
-                ex.printStackTrace();
+            });
+            
+            if (!completed) {
+                this.pathsLimitReached = true;
+                System.err.println("[NaturalCategory: calculateBasicLevels] WARNING - The taxonomy has " +
+                        "more than " + this.maxPaths + " paths, the basic levels consider the first ones only.");
+            }
+        }
+        
+        double max = 0.0;
+        for (int key = 0; key < graph.size(); key++) {
+            if (result[key] > max) {
+                max = result[key];
             }
         }
         
+        /* I normalize all the results from 0 to 1, recording the max of the normalized ones */
+        double maxNormalized = 0.0;
+        for (int key = 0; key < graph.size(); key++) {
+            double newValue = 
+            	(max == 0.0 ? 
+            			0.0 :
+                        MathFacility.normalize(
+	                        1.0, 
+	                        result[key], 
+	                        max)
+                );
+            result[key] = newValue;
+            if (newValue > maxNormalized) {
+                maxNormalized = newValue;
+            }
+            if (debug) System.out.println("\tbasic level weight for '" + graph.getCategory(key).getName() + "': " + newValue);
+        }
+        scores.setMax("NaturalCategoryBasicLevel", maxNormalized);
+    	
         return result;
     }
 
-    private Hashtable<Category, Double> calculateBasicLevels(
-            HTaxonomy t, ArrayList<ArrayList<Category>> paths) {
+    /* If the path from the root to a leaf has at least three categories, it adds one to its
+     * middle category, or to both the middle categories if the path length is even */
+    private void countMiddleCategories(int[] path, int size, double[] result) {
+        /* The path must have at least three categories */
+        if (size != 1 && size != 2) {
+            /* Even */
+            if (size % 2 == 0) {
+                result[path[(size / 2) - 1]] += 1.0;
+                result[path[size / 2]] += 1.0;
+            }
+            /* Odd */
+            else {
+                result[path[((size + 1) / 2) - 1]] += 1.0;
+            }                
+        }
+    }
+
+    /* The same counts of the method above for all the paths, without visiting them. A category that is
+     * 'u' edges far from the root and 'w' edges far from a leaf is in the middle of the path
+     * if u >= 1, w >= 1 and |u - w| <= 1, thus I count the paths of each length from the root
+     * to every category (up) and from every category to a leaf (down), visiting the categories
+     * in topological order. Each category keeps only the lengths between its shortest and its
+     * longest path. It returns false, without counting, if the categories reachable from the
+     * root have a cycle. */
+    private boolean countMiddleCategories(TaxonomyGraph graph, double[] result) {
+        int root = graph.getRoot();
+        if (root < 0) {
+            return true;
+        }
         
-        Hashtable<Category, Double> result = new Hashtable<Category, Double>();
+        int size = graph.size();
+        int[] subOffsets = graph.getSubOffsets();
+        int[] subCategories = graph.getSubCategories();
         
-        /* I initialize the result hash table */
-        Iterator<Category> ite = t.getAllCategories().iterator();
-        while (ite.hasNext()) {
-            Category cur = (Category) ite.next();
-            result.put(cur, new Double(0.0));
+        /* I find the categories reachable from the root and sort them topologically */
+        int[] order = new int[size];
+        int[] inDegree = new int[size];
+        boolean[] reachable = new boolean[size];
+        int reached = 0;
+        order[reached++] = root;
+        reachable[root] = true;
+        for (int i = 0; i < reached; i++) {
+            for (int j = subOffsets[order[i]]; j < subOffsets[order[i] + 1]; j++) {
+                int sub = subCategories[j];
+                inDegree[sub]++;
+                if (!reachable[sub]) {
+                    reachable[sub] = true;
+                    order[reached++] = sub;
+                }
+            }
         }
         
-        /* I work out all the basic level weights */
-        double max = 0.0;
-        Iterator<ArrayList<Category>> pathsIterator = paths.iterator();
-        while (pathsIterator.hasNext()) {
-            ArrayList<Category> path = pathsIterator.next();
-            
-            int size = path.size();
-            
-            /* The path must have at least three categories */
-            if (size != 1 && size != 2) {
-                /* Even */
-                if (size % 2 == 0) {
-                    Category categoryOne = path.get((size / 2) - 1);
-                    double valueOne = result.get(categoryOne).doubleValue() + 1.0;
-                    result.put(categoryOne, new Double(valueOne));
-                    if (valueOne > max) {
-                        max = valueOne;
-                    }
-                    
-                    Category categoryTwo = path.get(size / 2);
-                    double valueTwo = result.get(categoryTwo).doubleValue() + 1.0;
-                    result.put(categoryTwo, new Double(valueTwo));
-                    if (valueTwo > max) {
-                        max = valueTwo;
+        int sorted = 0;
+        if (inDegree[root] == 0) {
+            order[sorted++] = root;
+        }
+        for (int i = 0; i < sorted; i++) {
+            for (int j = subOffsets[order[i]]; j < subOffsets[order[i] + 1]; j++) {
+                if (--inDegree[subCategories[j]] == 0) {
+                    order[sorted++] = subCategories[j];
+                }
+            }
+        }
+        if (sorted < reached) {
+            return false;
+        }
+        
+        /* The lengths of the shortest and longest paths from the root and to a leaf */
+        int[] minDepth = new int[size];
+        int[] maxDepth = new int[size];
+        Arrays.fill(minDepth, Integer.MAX_VALUE);
+        minDepth[root] = 0;
+        int edges = 0;
+        for (int i = 0; i < sorted; i++) {
+            int cur = order[i];
+            for (int j = subOffsets[cur]; j < subOffsets[cur + 1]; j++) {
+                int sub = subCategories[j];
+                minDepth[sub] = Math.min(minDepth[sub], minDepth[cur] + 1);
+                maxDepth[sub] = Math.max(maxDepth[sub], maxDepth[cur] + 1);
+                edges++;
+            }
+        }
+        int[] minHeight = new int[size];
+        int[] maxHeight = new int[size];
+        for (int i = sorted - 1; i >= 0; i--) {
+            int cur = order[i];
+            if (subOffsets[cur] != subOffsets[cur + 1]) {
+                minHeight[cur] = Integer.MAX_VALUE;
+                for (int j = subOffsets[cur]; j < subOffsets[cur + 1]; j++) {
+                    int sub = subCategories[j];
+                    minHeight[cur] = Math.min(minHeight[cur], minHeight[sub] + 1);
+                    maxHeight[cur] = Math.max(maxHeight[cur], maxHeight[sub] + 1);
+                }
+            }
+        }
+        
+        /* The counts are exact while they fit in a long, otherwise they are approximated */
+        if (!this.countMiddleCategoriesExactly(
+                graph, order, sorted, minDepth, maxDepth, minHeight, maxHeight, result)) {
+            Arrays.fill(result, 0.0);
+            this.countMiddleCategoriesApproximately(
+                    graph, order, sorted, minDepth, maxDepth, minHeight, maxHeight, result);
+        }
+        this.edgesProcessed += 2L * edges;
+        
+        return true;
+    }
+
+    /* Paths from the root: up[c][i] is the number of paths of minDepth[c] + i edges. Paths to a
+     * leaf: down[c][i] is the number of paths of minHeight[c] + i edges. It returns false if a
+     * count does not fit in a long */
+    private boolean countMiddleCategoriesExactly(
+            TaxonomyGraph graph, int[] order, int sorted, 
+            int[] minDepth, int[] maxDepth, int[] minHeight, int[] maxHeight, double[] result) {
+        int root = graph.getRoot();
+        int[] subOffsets = graph.getSubOffsets();
+        int[] subCategories = graph.getSubCategories();
+        
+        long[][] up = new long[graph.size()][];
+        for (int i = 0; i < sorted; i++) {
+            up[order[i]] = new long[maxDepth[order[i]] - minDepth[order[i]] + 1];
+        }
+        up[root][0] = 1L;
+        for (int i = 0; i < sorted; i++) {
+            int cur = order[i];
+            for (int j = subOffsets[cur]; j < subOffsets[cur + 1]; j++) {
+                int sub = subCategories[j];
+                int shift = minDepth[cur] + 1 - minDepth[sub];
+                for (int d = 0; d < up[cur].length; d++) {
+                    if (up[sub][d + shift] > Long.MAX_VALUE - up[cur][d]) {
+                        return false;
                     }
+                    up[sub][d + shift] += up[cur][d];
                 }
-                /* Odd */
-                else {
-                    Category category = path.get(((size + 1) / 2) - 1);
-                    double value = result.get(category).doubleValue() + 1.0;
-                    result.put(category, new Double(value));
-                    if (value > max) {
-                        max = value;
+            }
+        }
+        
+        long[][] down = new long[graph.size()][];
+        for (int i = sorted - 1; i >= 0; i--) {
+            int cur = order[i];
+            down[cur] = new long[maxHeight[cur] - minHeight[cur] + 1];
+            if (subOffsets[cur] == subOffsets[cur + 1]) {
+                down[cur][0] = 1L;
+            }
+            for (int j = subOffsets[cur]; j < subOffsets[cur + 1]; j++) {
+                int sub = subCategories[j];
+                int shift = minHeight[sub] + 1 - minHeight[cur];
+                for (int h = 0; h < down[sub].length; h++) {
+                    if (down[cur][h + shift] > Long.MAX_VALUE - down[sub][h]) {
+                        return false;
                     }
-                }                
+                    down[cur][h + shift] += down[sub][h];
+                }
             }
         }
         
-        /* I normalize all the results from 0 to 1 */
-        Iterator<Category> resultIterator = result.keySet().iterator();
-    	while (resultIterator.hasNext()) {
-            Category key = resultIterator.next();
-            try {
-                double newValue = 
-                	(max == 0.0 ? 
-                			0.0 :
-	                        MathFacility.normalize(
-		                        1.0, 
-		                        result.get(key).doubleValue(), 
-		                        max)
-                    );
-                result.put(key, new Double(newValue));
-                t.addInfo(key, "NaturalCategoryBasicLevel", Double.toString(newValue));
-                if (debug) System.out.println("\tbasic level weight for '" + key.getName() + "': " + newValue);
-                
-            } catch (NoCategoryException ex) {
-                if (debug) { System.out.println("[NaturalCategory: calculateBasicLevel] ERROR - The '" 
-                        + key.getName() + "' isn't in the" +
-                    "taxonomy"); }
-                ex.printStackTrace();
+        long paths = 0L;
+        for (int h = 0; h < down[root].length; h++) {
+            if (paths > Long.MAX_VALUE - down[root][h]) {
+                return false;
             }
+            paths += down[root][h];
         }
-    	
-        return result;
+        
+        /* I combine the two counts */
+        for (int i = 0; i < sorted; i++) {
+            int cur = order[i];
+            long count = 0L;
+            for (int u = Math.max(1, minDepth[cur]); u <= maxDepth[cur]; u++) {
+                long upPaths = up[cur][u - minDepth[cur]];
+                int from = Math.max(Math.max(1, u - 1), minHeight[cur]);
+                int to = Math.min(u + 1, maxHeight[cur]);
+                for (int w = from; upPaths != 0L && w <= to; w++) {
+                    long downPaths = down[cur][w - minHeight[cur]];
+                    if (downPaths > Long.MAX_VALUE / upPaths || 
+                            count > Long.MAX_VALUE - upPaths * downPaths) {
+                        return false;
+                    }
+                    count += upPaths * downPaths;
+                }
+            }
+            result[cur] = count;
+        }
+        
+        this.pathsProcessed += paths;
+        return true;
     }
 
-
-    private Hashtable<Category, Double> calculateNameGoodness(HTaxonomy t) {
-        Hashtable<Category, Double> result = new Hashtable<Category, Double>();
+    /* The same counts of the method above, as doubles: they are exact below 2^53 only */
+    private void countMiddleCategoriesApproximately(
+            TaxonomyGraph graph, int[] order, int sorted, 
+            int[] minDepth, int[] maxDepth, int[] minHeight, int[] maxHeight, double[] result) {
+        int root = graph.getRoot();
+        int[] subOffsets = graph.getSubOffsets();
+        int[] subCategories = graph.getSubCategories();
         
-        Iterator <Category> ite = t.getAllCategories().iterator();
-        while (ite.hasNext()) {
-            Category category = ite.next();
-            try {
-            	URI nameURI = URI.create(category.getName());
-            	
-            	String name = nameURI.getFragment();
-            	if (name == null) { /* The item has not a fragment */
-            		String path = nameURI.getPath();
-            		if (path != null) {
-            			int lastIndex = path.lastIndexOf("/");
-            			
-            			if (lastIndex > -1 && lastIndex + 1 == path.length()) {
-            				path = path.substring(0, lastIndex);
-            				lastIndex = path.lastIndexOf("/");
-            			}
-            			
-                		if (lastIndex > -1) {
-                			name = path.substring(lastIndex + 1);
-                		} else {
-                			name = path;
-                		}
-            		} else {
-            			name = category.getName();
-            		}
-            	}
-            	
-                /* This pattern matches with every string that begins with '-' or '_' */
-                boolean beginsWithUnderscoreMinus = name.matches("[-_\\.:].*");
-                int underScoreOccurence = StringFacility.indexOf(name, "_").size();
-                int minusOccurrence = StringFacility.indexOf(name, "-").size();
-                int dotOccurrence = StringFacility.indexOf(name, ".").size();
-                int colonOccurrence = StringFacility.indexOf(name, ":").size();
-                int totalLack = underScoreOccurence + minusOccurrence + dotOccurrence + 
-                colonOccurrence - (beginsWithUnderscoreMinus ? 1 : 0);
+        double[][] up = new double[graph.size()][];
+        for (int i = 0; i < sorted; i++) {
+            up[order[i]] = new double[maxDepth[order[i]] - minDepth[order[i]] + 1];
+        }
+        up[root][0] = 1.0;
+        for (int i = 0; i < sorted; i++) {
+            int cur = order[i];
+            for (int j = subOffsets[cur]; j < subOffsets[cur + 1]; j++) {
+                int sub = subCategories[j];
+                int shift = minDepth[cur] + 1 - minDepth[sub];
+                for (int d = 0; d < up[cur].length; d++) {
+                    up[sub][d + shift] += up[cur][d];
+                }
+            }
+        }
+        
+        double[][] down = new double[graph.size()][];
+        for (int i = sorted - 1; i >= 0; i--) {
+            int cur = order[i];
+            down[cur] = new double[maxHeight[cur] - minHeight[cur] + 1];
+            if (subOffsets[cur] == subOffsets[cur + 1]) {
+                down[cur][0] = 1.0;
+            }
+            for (int j = subOffsets[cur]; j < subOffsets[cur + 1]; j++) {
+                int sub = subCategories[j];
+                int shift = minHeight[sub] + 1 - minHeight[cur];
+                for (int h = 0; h < down[sub].length; h++) {
+                    down[cur][h + shift] += down[sub][h];
+                }
+            }
+        }
+        
+        for (int h = 0; h < down[root].length; h++) {
+            this.pathsProcessed += (long) down[root][h];
+        }
+        
+        /* I combine the two counts */
+        for (int i = 0; i < sorted; i++) {
+            int cur = order[i];
+            for (int u = Math.max(1, minDepth[cur]); u <= maxDepth[cur]; u++) {
+                double paths = up[cur][u - minDepth[cur]];
+                int from = Math.max(Math.max(1, u - 1), minHeight[cur]);
+                int to = Math.min(u + 1, maxHeight[cur]);
+                for (int w = from; paths != 0.0 && w <= to; w++) {
+                    result[cur] += paths * down[cur][w - minHeight[cur]];
+                }
+            }
+        }
+    }
 
-                /* This pattern matches with every string that is composed without non-capital letter */
-                //boolean onlyCapitalLetters = name.matches("[^a-z]*");
-                /* This pattern matches with every string that contains (in the middle) at least one
-                 * capital letter (this assumption is valid if and only if the string isn't composed
-                 * by capital letters only). The capital composition approach is used in the goodness
-                 * if and only if 'totalLack' is zero */
-                /*
-                boolean capitalComposition = onlyCapitalLetters ? false : name.matches("..*[A-Z].*");
-                
-                double goodnessTmp = 
-                        1.0 
-                        - 
-                        (this.compoundRatio * (totalLack + (capitalComposition && totalLack == 0 ? 1 : 0)));
-                */
-                
-                double goodnessTmp = 1.0 - (
-                		this.compoundRatio * (totalLack + humaniseCamelCase(name).split(" ").length - 1));
-                double goodness = (goodnessTmp < 0.0 ? 0.0 : Math.min(1.0, goodnessTmp));
-                result.put(category, new Double(goodness));
-                t.addInfo(category, "NaturalCategoryNameGoodness", Double.toString(goodness));
-                
-                if (debug) System.out.println("\tsimplicity for '" + name + "':" + goodness);
-            } catch (NoCategoryException ex) {
-                if (debug) { System.out.println("[NaturalCategory: findNaturalCategories] ERROR - The '" 
-                        + category.getName() + "' isn't in the" +
-                    "taxonomy");}
-                ex.printStackTrace();
+    private double[] calculateNameGoodness(TaxonomyGraph graph, ScoreTable scores) {
+        double[] result = scores.createScores("NaturalCategoryNameGoodness");
+        
+        NameAnalyser analyser = NameAnalyser.getShared();
+        double max = 0.0;
+        for (int index = 0; index < graph.size(); index++) {
+            String name = graph.getCategory(index).getName();
+            double goodness = analyser.getGoodness(name, this.compoundRatio);
+            result[index] = goodness;
+            if (goodness > max) {
+                max = goodness;
             }
+            
+            if (debug) System.out.println("\tsimplicity for '" + NameAnalyser.getLocalName(name) + "':" + goodness);
         }
+        scores.setMax("NaturalCategoryNameGoodness", max);
                 
         return result;
     }
 
     /* I work out the natural category value for all the categories */
-    private HTaxonomy findNaturalCategories(
-            HTaxonomy t,
-            Hashtable<Category, Double> basicLevels, 
-            Hashtable<Category, Double> nameGoodness) {
+    private void findNaturalCategories(
+            TaxonomyGraph graph,
+            ScoreTable scores,
+            double[] basicLevels, 
+            double[] nameGoodness) {
         
         Hashtable<Category, Double> candidates = new Hashtable<Category, Double>();
+        double[] valueColumn = scores.createScores("NaturalCategoryValue");
+        String[] isColumn = scores.createLabels("NaturalCategoryIs");
         
         /* I calculate the final value for each category */
-        Iterator<Category> ite = t.getAllCategories().iterator();
-        while (ite.hasNext()) {
-            Category category = ite.next();
-            try {
-                double basicLevel = basicLevels.get(category).doubleValue();
-                double goodness = nameGoodness.get(category).doubleValue();
-                double value = MathFacility.normalize(
-                        1.0,
-                        basicLevel * this.levelWeight + goodness * this.nameWeight,
-                        this.levelWeight + this.nameWeight);
-                
-                /* If the category is the root category or a leaf category the value is setted to
-                 * zero because these category can't be natural cateogory */
-                if (t.getRoot() == category || t.getDirectSubCategories(category).isEmpty()) {
-                    value = 0.0;
-                }
+        for (int category = 0; category < graph.size(); category++) {
+            double basicLevel = basicLevels[category];
+            double goodness = nameGoodness[category];
+            double value = MathFacility.normalize(
+                    1.0,
+                    basicLevel * this.levelWeight + goodness * this.nameWeight,
+                    this.levelWeight + this.nameWeight);
+            
+            /* If the category is the root category or a leaf category the value is setted to
+             * zero because these category can't be natural cateogory */
+            if (graph.getRoot() == category || graph.countDirectSubCategories(category) == 0) {
+                value = 0.0;
+            }
 
-                t.addInfo(category, "NaturalCategoryValue", Double.toString(value));
-                t.addInfo(category, "NaturalCategoryIs", "no");
+            valueColumn[category] = value;
+            isColumn[category] = "no";
 
-                if (
-                        value > this.threshold                  && 
-                        !t.getDirectSubCategories(category).isEmpty() &&
-                        category != t.getRoot()
-                   ) {
-                    candidates.put(category, new Double(value));
-                }
-                
-            } catch (NoCategoryException ex) {
-                if (debug) { System.out.println("[NaturalCategory: findNaturalCategories] ERROR - The '" 
-                        + category.getName() + "' isn't in the" +
-                    "taxonomy"); }
-                ex.printStackTrace();
+            if (
+                    value > this.threshold                  && 
+                    graph.countDirectSubCategories(category) != 0 &&
+                    category != graph.getRoot()
+               ) {
+                candidates.put(graph.getCategory(category), new Double(value));
             }
         }
         
+        /* The candidates with the same value are taken in the order in which the candidate
+         * map returns them */
+        final double[] values = valueColumn;
+        final int[] order = new int[graph.size()];
+        int position = 0;
+        Iterator<Category> ite = candidates.keySet().iterator();
+        while (ite.hasNext()) {
+            order[graph.getIndex(ite.next())] = position++;
+        }
+        
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(
+                Math.max(1, candidates.size()), 
+                new Comparator<Integer>() {
+                    public int compare(Integer first, Integer second) {
+                        int result = Double.compare(values[second], values[first]);
+                        return (result != 0 ? result : order[first] - order[second]);
+                    }
+                });
+        ite = candidates.keySet().iterator();
+        while (ite.hasNext()) {
+            queue.add(graph.getIndex(ite.next()));
+        }
+        
         /* I can say that a category is natural if and only if:
-         *   - it is in the candidate map;
+         *   - it is a candidate;
          *   - any descendant category hasn't been already selected as natural;
-         *   - any ancestor category hasn't been already selected as natural. */
-        while (!candidates.isEmpty()) {
-            Category candidate = (Category) MapFacility.getKeyWithMaxDoubleValue((Map) candidates);
+         *   - any ancestor category hasn't been already selected as natural. 
+         * The candidates excluded by a natural category are left in the queue and skipped. */
+        BitSet excluded = new BitSet(graph.size());
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            if (excluded.get(index)) {
+                continue;
+            }
             
-            try {
-                t.addInfo(candidate, "NaturalCategoryIs", "yes");
-                if (debug) { System.out.println("\tNatural Category: " + candidate.getName() + " [value = " +
-                            candidates.get(candidate) + "]"); }
-                
-                candidates.remove(candidate);
-                
-                /* I remove from the candidates map all the category ancestors and descendants */
-                Set<Category> descendants = t.getAllSubCategories(candidate);
-                Set<Category> ancestors = t.getAllSuperCategories(candidate);
-                MapFacility.removeAllKeysFromMap(descendants, candidates);
-                MapFacility.removeAllKeysFromMap(ancestors, candidates);
-                
-            } catch (NoCategoryException ex) {
-                if (debug) { System.out.println("[NaturalCategory: findNaturalCategories] ERROR - The '" 
-                        + candidate.getName() + "' isn't in the" +
-                    "taxonomy"); }
-                ex.printStackTrace();
+            isColumn[index] = "yes";
+            if (debug) { System.out.println("\tNatural Category: " + graph.getCategory(index).getName() + 
+                        " [value = " + values[index] + "]"); }
+            
+            /* I exclude all the category ancestors and descendants */
+            for (int descendant : graph.getAllSubCategories(index)) {
+                excluded.set(descendant);
+            }
+            for (int ancestor : graph.getAllSuperCategories(index)) {
+                excluded.set(ancestor);
             }
         }
-        
-        return t;
+    }
+
+    public Set<String> getRequiredInfo() {
+        return new HashSet<String>();
+    }
+
+    public Set<String> getProducedInfo() {
+        Set<String> result = new HashSet<String>();
+        result.add("NaturalCategoryBasicLevel");
+        result.add("NaturalCategoryNameGoodness");
+        result.add("NaturalCategoryValue");
+        result.add("NaturalCategoryIs");
+        return result;
     }
 
     public String getName() {
@@ -377,32 +563,33 @@ public class NaturalCategory implements IAlgorithm {
     }
     
     public String humaniseCamelCase(String word) {
-        Pattern pattern = Pattern.compile("([A-Z]|[a-z])[a-z]*");
-
         Vector<String> tokens = new Vector<String>();
-        Matcher matcher = pattern.matcher(word);
-        String acronym = "";
+        Matcher matcher = WORD.matcher(word);
+        StringBuilder acronym = new StringBuilder();
         while(matcher.find()) {
             String found = matcher.group();
-            if(found.matches("^[A-Z]$")) {
-                acronym += found;
+            if(found.length() == 1 && Character.isUpperCase(found.charAt(0))) {
+                acronym.append(found);
             } else {
                 if(acronym.length() > 0) {
-                    tokens.add(acronym);
-                    acronym  = "";
+                    tokens.add(acronym.toString());
+                    acronym.setLength(0);
                 }
                 tokens.add(found.toLowerCase());
             }
         }
         if(acronym.length() > 0) {
-            tokens.add(acronym);
+            tokens.add(acronym.toString());
         }
         if (tokens.size() > 0) {
-            String humanisedString = "";
+            StringBuilder humanisedString = new StringBuilder();
             for (String s : tokens) {
-                humanisedString += s + " ";
+                if (humanisedString.length() > 0) {
+                    humanisedString.append(' ');
+                }
+                humanisedString.append(s);
             }
-            return humanisedString.substring(0,humanisedString.length() - 1);
+            return humanisedString.toString();
         }
 
         return word;
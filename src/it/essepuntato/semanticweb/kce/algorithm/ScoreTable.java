@@ -0,0 +1,270 @@
+package it.essepuntato.semanticweb.kce.algorithm;
+
+import it.essepuntato.taxonomy.Category;
+import it.essepuntato.taxonomy.HTaxonomy;
+import it.essepuntato.taxonomy.exceptions.NoCategoryException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  <p>
+ *      This class contains the values the algorithms work out for all the categories of a
+ *      taxonomy. Each category has a dense index (from 0 to {@link #size()} - 1) and each
+ *      value is a column named as the corresponding category information (see
+ *      {@link HTaxonomy#getInfo(Category, String)}): the numeric ones (e.g. "DensityGlobal")
+ *      are arrays of doubles, while the other ones (e.g. "DensityIs") are arrays of strings.
+ *  </p>
+ *  <p>
+ *      The table is passed from an algorithm to the following ones, so that the values do
+ *      not need to be converted to strings and parsed back. They become category information
+ *      only when asked (see {@link #writeInfo(HTaxonomy, Collection)}). The rankings of the
+ *      coverage algorithm (see {@link CoverageRankings}), if any, are kept in the table only.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class ScoreTable {
+
+	private Category[] categories = null;
+	private Map<Category,Integer> indexes = null;
+	private Map<String,double[]> scores = new LinkedHashMap<String,double[]>();
+	private Map<String,String[]> labels = new LinkedHashMap<String,String[]>();
+	private Map<String,Double> maxima = new HashMap<String,Double>();
+	private Map<String,CoverageRankings> rankings = new HashMap<String,CoverageRankings>();
+	private TaxonomyGraph graph = null;
+
+	/* The indexes follow the order in which the taxonomy returns its categories */
+	public ScoreTable(HTaxonomy ht) {
+		this(ht.getAllCategories());
+	}
+
+	public ScoreTable(Collection<Category> categories) {
+		this.categories = categories.toArray(new Category[categories.size()]);
+		this.indexes = new HashMap<Category,Integer>(this.categories.length * 2);
+		for (int i = 0; i < this.categories.length; i++) {
+			this.indexes.put(this.categories[i], i);
+		}
+	}
+
+	public int size() {
+		return this.categories.length;
+	}
+
+	/* It returns -1 if the category is not in the table */
+	public int getIndex(Category category) {
+		Integer result = this.indexes.get(category);
+		return (result == null ? -1 : result.intValue());
+	}
+
+	public Category getCategory(int index) {
+		return this.categories[index];
+	}
+
+	/* The structure of the taxonomy of this table, compiled the first time it is asked */
+	public synchronized TaxonomyGraph getGraph(HTaxonomy ht) {
+		if (this.graph == null) {
+			this.graph = new TaxonomyGraph(ht, this);
+		}
+		return this.graph;
+	}
+
+	/* The values of a numeric column, or null if there is no such column */
+	public synchronized double[] getScores(String key) {
+		return this.scores.get(key);
+	}
+
+	/* It replaces the column, if any, with a new one in which all the values are zero */
+	public synchronized double[] createScores(String key) {
+		double[] result = new double[this.categories.length];
+		this.labels.remove(key);
+		this.maxima.remove(key);
+		this.scores.put(key, result);
+		return result;
+	}
+
+	/* The values of a non-numeric column, or null if there is no such column */
+	public synchronized String[] getLabels(String key) {
+		return this.labels.get(key);
+	}
+
+	/* It replaces the column, if any, with a new one in which all the values are null */
+	public synchronized String[] createLabels(String key) {
+		String[] result = new String[this.categories.length];
+		this.scores.remove(key);
+		this.maxima.remove(key);
+		this.labels.put(key, result);
+		return result;
+	}
+
+	/* The greatest value of a numeric column, as recorded by whoever filled it in (see setMax),
+	 * or NaN if it has not been recorded */
+	public synchronized double getMax(String key) {
+		Double result = this.maxima.get(key);
+		return (result == null ? Double.NaN : result.doubleValue());
+	}
+
+	/* It records the greatest value of a numeric column, worked out while filling it in, so
+	 * that it is not looked for again: it is discarded when the column is replaced */
+	public synchronized void setMax(String key, double max) {
+		if (this.scores.containsKey(key)) {
+			this.maxima.put(key, max);
+		}
+	}
+
+	/* The rankings with the name specified, or null if there are no such rankings */
+	public synchronized CoverageRankings getRankings(String key) {
+		return this.rankings.get(key);
+	}
+
+	/* It replaces the rankings, if any: null removes them */
+	public synchronized void setRankings(String key, CoverageRankings rankings) {
+		if (rankings == null) {
+			this.rankings.remove(key);
+		} else {
+			this.rankings.put(key, rankings);
+		}
+	}
+
+	public synchronized boolean contains(String key) {
+		return this.scores.containsKey(key) || this.labels.containsKey(key);
+	}
+
+	/* It returns NaN if the category or the column is not in the table */
+	public double getScore(Category category, String key) {
+		double[] column = this.getScores(key);
+		int index = this.getIndex(category);
+		return (column == null || index < 0 ? Double.NaN : column[index]);
+	}
+
+	/* It returns null if the category or the column is not in the table */
+	public String getLabel(Category category, String key) {
+		String[] column = this.getLabels(key);
+		int index = this.getIndex(category);
+		return (column == null || index < 0 ? null : column[index]);
+	}
+
+	/**
+	 * This method adds to the table the category information specified. A column is numeric
+	 * if all its values are numbers, and the missing numeric values are NaN. The greatest
+	 * value of each numeric column is recorded (see {@link #getMax(String)}).
+	 *
+	 * @param ht the taxonomy containing the information.
+	 * @param keys the names of the information to add.
+	 */
+	public void readInfo(HTaxonomy ht, Collection<String> keys) {
+		Map<String,Map<String,String>> info = new HashMap<String,Map<String,String>>();
+		try {
+			for (Category category : this.categories) {
+				info.put(category.getName(), ht.getAllInfo(category));
+			}
+		} catch (NoCategoryException e) {
+			System.err.println("[ScoreTable: readInfo] ERROR - The categories of the table aren't in the taxonomy.");
+			e.printStackTrace();
+		}
+		this.readInfo(info, keys);
+	}
+
+	/* The information is specified by category name (e.g. the one returned by toInfo) */
+	public void readInfo(Map<String,Map<String,String>> info, Collection<String> keys) {
+		for (String key : keys) {
+			boolean numeric = true;
+			boolean found = false;
+			String[] values = new String[this.categories.length];
+			for (int i = 0; i < this.categories.length; i++) {
+				Map<String,String> categoryInfo = info.get(this.categories[i].getName());
+				values[i] = (categoryInfo == null ? null : categoryInfo.get(key));
+				if (values[i] != null) {
+					found = true;
+					numeric = numeric && isNumber(values[i]);
+				}
+			}
+
+			if (!found) {
+				continue;
+			} else if (numeric) {
+				double[] column = this.createScores(key);
+				double max = Double.NaN;
+				for (int i = 0; i < values.length; i++) {
+					column[i] = (values[i] == null ? Double.NaN : Double.parseDouble(values[i]));
+					if (column[i] > max || Double.isNaN(max)) {
+						max = column[i];
+					}
+				}
+				this.setMax(key, max);
+			} else {
+				System.arraycopy(values, 0, this.createLabels(key), 0, values.length);
+			}
+		}
+	}
+
+	/**
+	 * This method adds the columns specified to the information of the categories of the
+	 * taxonomy, replacing the previous values. A null label removes the information. The
+	 * columns that are not in the table are not considered.
+	 *
+	 * @param ht the taxonomy containing the categories of this table.
+	 * @param keys the names of the columns to add.
+	 */
+	public void writeInfo(HTaxonomy ht, Collection<String> keys) {
+		try {
+			for (int i = 0; i < this.categories.length; i++) {
+				Map<String,String> info = ht.getAllInfo(this.categories[i]);
+				this.putInfo(i, info, keys);
+			}
+		} catch (NoCategoryException e) {
+			System.err.println("[ScoreTable: writeInfo] ERROR - The categories of the table aren't in the taxonomy.");
+			e.printStackTrace();
+		}
+	}
+
+	/* The columns specified as information, by category name */
+	public Map<String,Map<String,String>> toInfo(Collection<String> keys) {
+		Map<String,Map<String,String>> result = new HashMap<String,Map<String,String>>();
+		for (int i = 0; i < this.categories.length; i++) {
+			Map<String,String> info = new HashMap<String,String>();
+			this.putInfo(i, info, keys);
+			result.put(this.categories[i].getName(), info);
+		}
+		return result;
+	}
+
+	/* A new table containing the information specified of all the categories of the taxonomy */
+	public static ScoreTable fromInfo(HTaxonomy ht, Collection<String> keys) {
+		ScoreTable result = new ScoreTable(ht);
+		result.readInfo(ht, keys);
+		return result;
+	}
+
+	private void putInfo(int index, Map<String,String> info, Collection<String> keys) {
+		Iterator<String> ite = keys.iterator();
+		while (ite.hasNext()) {
+			String key = ite.next();
+			double[] column = this.getScores(key);
+			if (column != null) {
+				info.put(key, Double.toString(column[index]));
+			} else {
+				String[] labelColumn = this.getLabels(key);
+				if (labelColumn != null) {
+					if (labelColumn[index] == null) {
+						info.remove(key);
+					} else {
+						info.put(key, labelColumn[index]);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean isNumber(String value) {
+		try {
+			Double.parseDouble(value);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,433 @@
+package it.essepuntato.semanticweb.kce.algorithm;
+
+import it.essepuntato.taxonomy.Category;
+import it.essepuntato.taxonomy.HTaxonomy;
+import it.essepuntato.taxonomy.Instance;
+import it.essepuntato.taxonomy.Property;
+import it.essepuntato.taxonomy.exceptions.NoCategoryException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  <p>
+ *      This class is a read-only snapshot of the structure of a taxonomy, in which the
+ *      categories are identified by the indexes of a score table (see
+ *      {@link ScoreTable#getIndex(Category)}). The direct sub and super categories, the
+ *      properties having a category as domain and the direct instances of a category are
+ *      stored in compressed rows (CSR): the items of the category <i>i</i> are the ones from
+ *      <code>offsets[i]</code> (included) to <code>offsets[i + 1]</code> (excluded) of the
+ *      corresponding array, in the order in which the taxonomy returns them.
+ *  </p>
+ *  <p>
+ *      All the sub and super categories of a category are the ones stored in the taxonomy,
+ *      and they are read only when asked for the first time.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class TaxonomyGraph {
+
+	private HTaxonomy ht = null;
+	private ScoreTable scores = null;
+	private int root = -1;
+	private int propertyCount = 0;
+	private int instanceCount = 0;
+
+	private int[] subOffsets = null;
+	private int[] subCategories = null;
+	private int[] superOffsets = null;
+	private int[] superCategories = null;
+	private int[] propertyOffsets = null;
+	private int[] properties = null;
+	private int[] instanceOffsets = null;
+	private int[] instances = null;
+
+	/* Read from the taxonomy when needed */
+	private int[][] allSubCategories = null;
+	private int[][] allSuperCategories = null;
+	private int[] allSubCategoryCounts = null;
+	private int[] distinctSubCategoryCounts = null;
+
+	public TaxonomyGraph(HTaxonomy ht, ScoreTable scores) {
+		this.ht = ht;
+		this.scores = scores;
+
+		int size = scores.size();
+		this.root = (ht.getRoot() == null ? -1 : scores.getIndex(ht.getRoot()));
+		this.propertyCount = ht.getAllProperties().size();
+		this.instanceCount = ht.getAllInstances().size();
+		this.allSubCategories = new int[size][];
+		this.allSuperCategories = new int[size][];
+
+		Map<Property,Integer> propertyIndexes = indexes(ht.getAllProperties());
+		Map<Instance,Integer> instanceIndexes = indexes(ht.getAllInstances());
+
+		this.subOffsets = new int[size + 1];
+		this.superOffsets = new int[size + 1];
+		this.propertyOffsets = new int[size + 1];
+		this.instanceOffsets = new int[size + 1];
+		IntList subs = new IntList();
+		IntList supers = new IntList();
+		IntList domains = new IntList();
+		IntList directInstances = new IntList();
+
+		try {
+			for (int i = 0; i < size; i++) {
+				Category category = scores.getCategory(i);
+
+				this.addCategories(subs, ht.getDirectSubCategories(category));
+				this.subOffsets[i + 1] = subs.size();
+
+				this.addCategories(supers, ht.getDirectSuperCategories(category));
+				this.superOffsets[i + 1] = supers.size();
+
+				for (Property property : ht.getPropertiesByDomain(category)) {
+					domains.add(index(propertyIndexes, property));
+				}
+				this.propertyOffsets[i + 1] = domains.size();
+
+				for (Instance instance : ht.getDirectInstances(category)) {
+					directInstances.add(index(instanceIndexes, instance));
+				}
+				this.instanceOffsets[i + 1] = directInstances.size();
+			}
+		} catch (NoCategoryException e) { /* Impossible, the categories come from the taxonomy */
+			throw new IllegalStateException(e);
+		}
+
+		this.subCategories = subs.toArray();
+		this.superCategories = supers.toArray();
+		this.properties = domains.toArray();
+		this.instances = directInstances.toArray();
+	}
+
+	public int size() {
+		return this.scores.size();
+	}
+
+	/* It returns -1 if the taxonomy has not a root */
+	public int getRoot() {
+		return this.root;
+	}
+
+	public Category getCategory(int category) {
+		return this.scores.getCategory(category);
+	}
+
+	public int getIndex(Category category) {
+		return this.scores.getIndex(category);
+	}
+
+	/* The number of all the properties of the taxonomy */
+	public int getPropertyCount() {
+		return this.propertyCount;
+	}
+
+	/* The number of all the instances of the taxonomy */
+	public int getInstanceCount() {
+		return this.instanceCount;
+	}
+
+	public int[] getSubOffsets() {
+		return this.subOffsets;
+	}
+
+	public int[] getSubCategories() {
+		return this.subCategories;
+	}
+
+	public int[] getSuperOffsets() {
+		return this.superOffsets;
+	}
+
+	public int[] getSuperCategories() {
+		return this.superCategories;
+	}
+
+	public int[] getPropertyOffsets() {
+		return this.propertyOffsets;
+	}
+
+	public int[] getProperties() {
+		return this.properties;
+	}
+
+	public int[] getInstanceOffsets() {
+		return this.instanceOffsets;
+	}
+
+	public int[] getInstances() {
+		return this.instances;
+	}
+
+	public int countDirectSubCategories(int category) {
+		return this.subOffsets[category + 1] - this.subOffsets[category];
+	}
+
+	public int countDirectSuperCategories(int category) {
+		return this.superOffsets[category + 1] - this.superOffsets[category];
+	}
+
+	public int countProperties(int category) {
+		return this.propertyOffsets[category + 1] - this.propertyOffsets[category];
+	}
+
+	public int countDirectInstances(int category) {
+		return this.instanceOffsets[category + 1] - this.instanceOffsets[category];
+	}
+
+	/* NB: the array returned must not be modified */
+	public synchronized int[] getAllSubCategories(int category) {
+		if (this.allSubCategories[category] == null) {
+			try {
+				this.allSubCategories[category] =
+					this.toIndexes(this.ht.getAllSubCategories(this.getCategory(category)));
+			} catch (NoCategoryException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return this.allSubCategories[category];
+	}
+
+	/* NB: the array returned must not be modified */
+	public synchronized int[] getAllSuperCategories(int category) {
+		if (this.allSuperCategories[category] == null) {
+			try {
+				this.allSuperCategories[category] =
+					this.toIndexes(this.ht.getAllSuperCategories(this.getCategory(category)));
+			} catch (NoCategoryException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return this.allSuperCategories[category];
+	}
+
+	/**
+	 * This method returns the number of all the sub categories of each category, i.e. the
+	 * length of {@link #getAllSubCategories(int)}, without converting the sub categories
+	 * stored in the taxonomy to indexes.
+	 *
+	 * @return the number of all the sub categories of each category. NB: the array returned
+	 * must not be modified.
+	 */
+	public synchronized int[] countAllSubCategories() {
+		if (this.allSubCategoryCounts == null) {
+			int size = this.size();
+			int[] result = new int[size];
+			try {
+				for (int i = 0; i < size; i++) {
+					result[i] = this.ht.getAllSubCategories(this.getCategory(i)).size();
+				}
+			} catch (NoCategoryException e) {
+				throw new IllegalStateException(e);
+			}
+			this.allSubCategoryCounts = result;
+		}
+		return this.allSubCategoryCounts;
+	}
+
+	/**
+	 * This method returns the number of all the distinct sub categories of each category,
+	 * worked out from the direct sub categories only. If every category has at most one
+	 * super category, the count of a category is the sum of the counts of its direct sub
+	 * categories plus their number. Otherwise the categories are sorted topologically and, for
+	 * each block of 64 categories, a bit mask of the ones that are sub categories of each
+	 * category is propagated from the sub categories to the super ones, which takes O(n)
+	 * memory. If there is a cycle the sub categories are read from the taxonomy.
+	 * <p>
+	 * NB: the count is the one of {@link #countAllSubCategories()} only if the taxonomy
+	 * stores complete closures, i.e. if the super categories of each category are added before
+	 * its sub categories. This is not the case for some ontologies with multiple inheritance
+	 * (e.g. the ones read by OWLAPITaxonomyMaker), for which the count is greater.
+	 * </p>
+	 *
+	 * @return the number of all the distinct sub categories of each category. NB: the array
+	 * returned must not be modified.
+	 */
+	public synchronized int[] countDistinctSubCategories() {
+		if (this.distinctSubCategoryCounts == null) {
+			int size = this.size();
+			int[] result = new int[size];
+			int[] order = this.sortTopologically();
+
+			boolean tree = true;
+			for (int i = 0; i < size && tree; i++) {
+				tree = this.countDirectSuperCategories(i) <= 1;
+			}
+
+			if (order == null) {
+				for (int i = 0; i < size; i++) {
+					result[i] = this.getAllSubCategories(i).length;
+				}
+			} else if (tree) {
+				for (int i = size - 1; i >= 0; i--) {
+					int category = order[i];
+					for (int j = this.subOffsets[category]; j < this.subOffsets[category + 1]; j++) {
+						result[category] += result[this.subCategories[j]] + 1;
+					}
+				}
+			} else {
+				int[] position = new int[size];
+				for (int i = 0; i < size; i++) {
+					position[order[i]] = i;
+				}
+
+				/* The sub categories of a category follow it in the topological order, thus
+				 * the categories after the block have no sub category in it, and their mask
+				 * is still zero */
+				long[] masks = new long[size];
+				for (int block = 0; block < size; block += 64) {
+					int last = Math.min(block + 64, size) - 1;
+					for (int i = last; i >= 0; i--) {
+						int category = order[i];
+						long mask = 0L;
+						for (int j = this.subOffsets[category]; j < this.subOffsets[category + 1]; j++) {
+							int sub = this.subCategories[j];
+							mask |= masks[sub];
+							if (position[sub] >= block && position[sub] <= last) {
+								mask |= 1L << (position[sub] - block);
+							}
+						}
+						masks[category] = mask;
+						result[category] += Long.bitCount(mask);
+					}
+				}
+			}
+
+			this.distinctSubCategoryCounts = result;
+		}
+		return this.distinctSubCategoryCounts;
+	}
+
+	/* All the categories, each one before its sub categories, or null if there is a cycle */
+	private int[] sortTopologically() {
+		int size = this.size();
+		int[] result = new int[size];
+		int[] superCount = new int[size];
+		int sorted = 0;
+		for (int i = 0; i < size; i++) {
+			superCount[i] = this.countDirectSuperCategories(i);
+			if (superCount[i] == 0) {
+				result[sorted++] = i;
+			}
+		}
+
+		for (int i = 0; i < sorted; i++) {
+			for (int j = this.subOffsets[result[i]]; j < this.subOffsets[result[i] + 1]; j++) {
+				if (--superCount[this.subCategories[j]] == 0) {
+					result[sorted++] = this.subCategories[j];
+				}
+			}
+		}
+		return (sorted == size ? result : null);
+	}
+
+	/**
+	 * This method visits, depth first, all the paths from the root to a category without sub
+	 * categories, following the sub categories in the order of {@link #getSubCategories()}.
+	 * A path never passes twice through the same category: a sub category already in the
+	 * path is not followed. Only the current path is kept in memory.
+	 *
+	 * @param visitor the visitor of the paths.
+	 * @return false if the visitor stopped the visit, true otherwise.
+	 */
+	public boolean visitAllPaths(IPathVisitor visitor) {
+		if (this.root < 0) {
+			return true;
+		}
+
+		int[] path = new int[this.size()];
+		int[] next = new int[this.size()]; /* The next sub category to follow at each step */
+		boolean[] inPath = new boolean[this.size()];
+		path[0] = this.root;
+		next[0] = this.subOffsets[this.root];
+		inPath[this.root] = true;
+
+		int length = 1;
+		while (length > 0) {
+			int current = path[length - 1];
+			if (this.subOffsets[current] == this.subOffsets[current + 1]) {
+				if (!visitor.visit(path, length)) {
+					return false;
+				}
+				inPath[current] = false;
+				length--;
+			} else if (next[length - 1] < this.subOffsets[current + 1]) {
+				int sub = this.subCategories[next[length - 1]++];
+				if (!inPath[sub]) {
+					path[length] = sub;
+					next[length] = this.subOffsets[sub];
+					inPath[sub] = true;
+					length++;
+				}
+			} else {
+				inPath[current] = false;
+				length--;
+			}
+		}
+		return true;
+	}
+
+	private void addCategories(IntList list, Set<Category> categories) {
+		for (Category category : categories) {
+			int index = this.scores.getIndex(category);
+			if (index >= 0) {
+				list.add(index);
+			}
+		}
+	}
+
+	private int[] toIndexes(Set<Category> categories) {
+		IntList result = new IntList();
+		this.addCategories(result, categories);
+		return result.toArray();
+	}
+
+	private static <T> Map<T,Integer> indexes(Collection<T> items) {
+		Map<T,Integer> result = new HashMap<T,Integer>(items.size() * 2);
+		Iterator<T> ite = items.iterator();
+		for (int i = 0; ite.hasNext(); i++) {
+			result.put(ite.next(), i);
+		}
+		return result;
+	}
+
+	/* The items that are not in the taxonomy (if any) get new indexes */
+	private static <T> int index(Map<T,Integer> indexes, T item) {
+		Integer result = indexes.get(item);
+		if (result == null) {
+			result = indexes.size();
+			indexes.put(item, result);
+		}
+		return result.intValue();
+	}
+
+	/* A growing array of ints */
+	private static class IntList {
+		private int[] items = new int[16];
+		private int size = 0;
+
+		public void add(int item) {
+			if (this.size == this.items.length) {
+				int[] newItems = new int[this.items.length * 2];
+				System.arraycopy(this.items, 0, newItems, 0, this.size);
+				this.items = newItems;
+			}
+			this.items[this.size++] = item;
+		}
+
+		public int size() {
+			return this.size;
+		}
+
+		public int[] toArray() {
+			int[] result = new int[this.size];
+			System.arraycopy(this.items, 0, result, 0, this.size);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package it.essepuntato.semanticweb.kce.algorithm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *  <p>
+ *      This class creates the threads of the pool an algorithm uses during an evaluation, and
+ *      keeps them so that the CPU time and the bytes allocated by all of them can be reported
+ *      together with the ones of the thread executing the algorithm. Since a new pool is
+ *      created for each evaluation, all the work of its threads is due to that evaluation.
+ *  </p>
+ *  <p>
+ *      NB: the JVM does not measure the threads that have terminated, thus the measures have
+ *      to be taken before the pool is shut down.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+class WorkerThreadFactory implements ThreadFactory {
+
+	private String prefix = null;
+	private int count = 0;
+	private List<Thread> threads = new ArrayList<Thread>();
+
+	public WorkerThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	public synchronized Thread newThread(Runnable r) {
+		Thread result = new Thread(r, this.prefix + (++count));
+		result.setDaemon(true);
+		this.threads.add(result);
+		return result;
+	}
+
+	/* The CPU time, in nanoseconds, of all the threads created, or -1 if it is not measurable */
+	public synchronized long getCpuTime() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		long result = 0L;
+		try {
+			if (!bean.isThreadCpuTimeSupported()) {
+				return -1L;
+			}
+			for (Thread thread : this.threads) {
+				long time = bean.getThreadCpuTime(thread.getId());
+				if (time < 0) {
+					return -1L;
+				}
+				result += time;
+			}
+		} catch (UnsupportedOperationException e) {
+			return -1L;
+		}
+		return result;
+	}
+
+	/* The bytes allocated by all the threads created, or -1 if they are not measurable */
+	public synchronized long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		long result = 0L;
+		try {
+			if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+				return -1L;
+			}
+			for (Thread thread : this.threads) {
+				long bytes = ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(thread.getId());
+				if (bytes < 0) {
+					return -1L;
+				}
+				result += bytes;
+			}
+		} catch (UnsupportedOperationException e) {
+			return -1L;
+		} catch (LinkageError e) {
+			/* Not a HotSpot JVM */
+			return -1L;
+		}
+		return result;
+	}
+}
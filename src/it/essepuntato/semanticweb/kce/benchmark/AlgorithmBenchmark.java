@@ -0,0 +1,270 @@
+package it.essepuntato.semanticweb.kce.benchmark;
+
+import it.essepuntato.semanticweb.kce.algorithm.Coverage;
+import it.essepuntato.semanticweb.kce.algorithm.Density;
+import it.essepuntato.semanticweb.kce.algorithm.IStageAlgorithm;
+import it.essepuntato.semanticweb.kce.algorithm.NaturalCategory;
+import it.essepuntato.semanticweb.kce.algorithm.ScoreTable;
+import it.essepuntato.semanticweb.kce.engine.Engine;
+import it.essepuntato.taxonomy.HTaxonomy;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  <p>
+ *      This class measures the throughput (operations per second) and the allocation rate of
+ *      each algorithm and of the whole engine on the taxonomies built by
+ *      {@link TaxonomyShapes}. Every benchmark is executed for some warm-up iterations, whose
+ *      results are discarded, and then for some measured iterations of (at least) a fixed
+ *      time each, as a JMH throughput benchmark would do.
+ *  </p>
+ *  <p>
+ *      Usage: AlgorithmBenchmark [-shapes chain,wide,diamond,property] [-sizes 100,500,2000]
+ *      [-benchmarks density,natural,coverage,engine] [-warmup 2] [-iterations 5] [-time 1000]
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class AlgorithmBenchmark {
+
+	public static final String[] BENCHMARKS = { "density", "natural", "coverage", "engine" };
+
+	private int warmupIterations = 2;
+	private int iterations = 5;
+	private long iterationTime = 1000L;
+
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	/* In milliseconds */
+	public void setIterationTime(long iterationTime) {
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * This method measures a benchmark on a taxonomy.
+	 *
+	 * @param benchmark one among "density", "natural", "coverage" and "engine".
+	 * @param ht the taxonomy to use.
+	 * @return the measures.
+	 */
+	public Result measure(String benchmark, HTaxonomy ht) {
+		Runnable operation = this.prepare(benchmark, ht);
+
+		for (int i = 0; i < this.warmupIterations; i++) {
+			this.iterate(operation);
+		}
+
+		long operations = 0L;
+		long nanoseconds = 0L;
+		long allocated = 0L;
+		double min = Double.MAX_VALUE;
+		double max = 0.0;
+		for (int i = 0; i < this.iterations; i++) {
+			long[] iteration = this.iterate(operation);
+			operations += iteration[0];
+			nanoseconds += iteration[1];
+			allocated = (allocated < 0 || iteration[2] < 0 ? -1L : allocated + iteration[2]);
+
+			double throughput = iteration[0] / (iteration[1] / 1e9);
+			min = Math.min(min, throughput);
+			max = Math.max(max, throughput);
+		}
+
+		return new Result(benchmark, ht.getAllCategories().size(), operations, nanoseconds, allocated, min, max);
+	}
+
+	/* It returns the operations executed, the nanoseconds spent and the bytes allocated */
+	private long[] iterate(Runnable operation) {
+		long allocatedStart = allocatedBytes();
+		long start = System.nanoTime();
+		long end = start + this.iterationTime * 1000000L;
+		long operations = 0L;
+		long now = start;
+		do {
+			operation.run();
+			operations++;
+			now = System.nanoTime();
+		} while (now < end);
+		long allocatedEnd = allocatedBytes();
+
+		return new long[] {
+				operations,
+				now - start,
+				(allocatedStart < 0 || allocatedEnd < 0 ? -1L : allocatedEnd - allocatedStart) };
+	}
+
+	/* The algorithms that precede the one measured are executed once, so that the
+	 * scores contain all the values it needs */
+	private Runnable prepare(String benchmark, final HTaxonomy ht) {
+		final Map<String,IStageAlgorithm> algorithms = new HashMap<String,IStageAlgorithm>();
+		algorithms.put("density", new Density("density"));
+		algorithms.put("natural", new NaturalCategory("natural"));
+		algorithms.put("coverage", new Coverage("coverage"));
+
+		if (benchmark.equals("engine")) {
+			return new Runnable() {
+				public void run() {
+					/* On this thread only, so that all the allocations are measured */
+					Engine engine = new Engine(ht);
+					engine.setParallelism(1);
+					engine.setStageMemoization(false);
+					engine.setWriteInfo(false);
+					engine.run();
+				}
+			};
+		}
+
+		final IStageAlgorithm algorithm = algorithms.get(benchmark);
+		if (algorithm == null) {
+			throw new IllegalArgumentException("Unknown benchmark '" + benchmark + "'");
+		}
+
+		final List<Map<String,String>> parameters = Engine.getDefaultParameters();
+		final int index = Arrays.asList(BENCHMARKS).indexOf(benchmark);
+		final ScoreTable scores = new ScoreTable(ht);
+		if (algorithm instanceof Coverage) {
+			algorithms.get("density").evaluate(ht, scores, parameters.get(0));
+			algorithms.get("natural").evaluate(ht, scores, parameters.get(1));
+		}
+
+		return new Runnable() {
+			public void run() {
+				algorithm.evaluate(ht, scores, parameters.get(index));
+			}
+		};
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+						Thread.currentThread().getId());
+			}
+		} catch (UnsupportedOperationException e) {
+			// Not measurable
+		} catch (LinkageError e) {
+			// Not a HotSpot JVM
+		}
+		return -1L;
+	}
+
+	public static class Result {
+		private String benchmark = null;
+		private int categories = 0;
+		private long operations = 0L;
+		private long nanoseconds = 0L;
+		private long allocated = 0L;
+		private double minThroughput = 0.0;
+		private double maxThroughput = 0.0;
+
+		Result(
+				String benchmark, 
+				int categories, 
+				long operations, 
+				long nanoseconds, 
+				long allocated, 
+				double minThroughput, 
+				double maxThroughput) {
+			this.benchmark = benchmark;
+			this.categories = categories;
+			this.operations = operations;
+			this.nanoseconds = nanoseconds;
+			this.allocated = allocated;
+			this.minThroughput = minThroughput;
+			this.maxThroughput = maxThroughput;
+		}
+
+		/* Operations per second */
+		public double getThroughput() {
+			return this.operations / (this.nanoseconds / 1e9);
+		}
+
+		/* Bytes per operation, or -1 if they cannot be measured */
+		public double getAllocationPerOperation() {
+			return (this.allocated < 0 ? -1.0 : (double) this.allocated / this.operations);
+		}
+
+		/* Megabytes per second, or -1 if they cannot be measured */
+		public double getAllocationRate() {
+			return (this.allocated < 0 ? -1.0 : (this.allocated / (1024.0 * 1024.0)) / (this.nanoseconds / 1e9));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-9s %8d %12.3f ops/s [%.3f, %.3f] %14.0f B/op %10.1f MB/s",
+					this.benchmark, this.categories, this.getThroughput(), 
+					this.minThroughput, this.maxThroughput, 
+					this.getAllocationPerOperation(), this.getAllocationRate());
+		}
+	}
+
+	private static List<String> split(String value) {
+		return new ArrayList<String>(Arrays.asList(value.split(",")));
+	}
+
+	public static void main(String[] args) {
+		List<String> shapes = Arrays.asList(TaxonomyShapes.SHAPES);
+		List<String> sizes = Arrays.asList("100", "500", "2000");
+		List<String> benchmarks = Arrays.asList(BENCHMARKS);
+		AlgorithmBenchmark benchmark = new AlgorithmBenchmark();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-shapes")) {
+				shapes = split(args[++i]);
+			} else if (arg.equals("-sizes")) {
+				sizes = split(args[++i]);
+			} else if (arg.equals("-benchmarks")) {
+				benchmarks = split(args[++i]);
+			} else if (arg.equals("-warmup")) {
+				benchmark.setWarmupIterations(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-iterations")) {
+				benchmark.setIterations(Integer.parseInt(args[++i]));
+			} else if (arg.equals("-time")) {
+				benchmark.setIterationTime(Long.parseLong(args[++i]));
+			} else {
+				System.err.println("Usage: AlgorithmBenchmark [-shapes chain,wide,diamond,property] " +
+						"[-sizes 100,500,2000] [-benchmarks density,natural,coverage,engine] " +
+						"[-warmup 2] [-iterations 5] [-time 1000]");
+				System.exit(2);
+			}
+		}
+
+		/* The algorithms log on the standard output */
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			public void write(int b) {
+				// Discarded
+			}
+		}));
+
+		out.println(String.format("%-9s %-9s %8s %s", "shape", "benchmark", "classes", "result"));
+		for (String shape : shapes) {
+			for (String size : sizes) {
+				for (String name : benchmarks) {
+					HTaxonomy ht = TaxonomyShapes.make(shape, Integer.parseInt(size.trim()));
+					try {
+						out.println(String.format("%-9s %s", shape, benchmark.measure(name, ht)));
+					} catch (Throwable e) {
+						out.println(String.format("%-9s %-9s %8s failed: %s", shape, name, size, e));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package it.essepuntato.semanticweb.kce.benchmark;
+
+import it.essepuntato.semanticweb.kce.engine.Engine;
+import it.essepuntato.taxonomy.Category;
+import it.essepuntato.taxonomy.HTaxonomy;
+import it.essepuntato.taxonomy.Instance;
+import it.essepuntato.taxonomy.Property;
+import it.essepuntato.taxonomy.exceptions.NoCategoryException;
+import it.essepuntato.taxonomy.exceptions.NoInstanceException;
+import it.essepuntato.taxonomy.exceptions.NoPropertyException;
+import it.essepuntato.taxonomy.exceptions.RootException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *  <p>
+ *      This class generates synthetic ontologies of any size, either as taxonomies or as
+ *      OWL (RDF/XML) files readable by the OWLAPITaxonomyMaker. The same parameters (seed
+ *      included) always generate the same ontology:
+ *  </p>
+ *  <ul>
+ *      <li><p><i>classes</i>: the number of classes;</p></li>
+ *      <li>
+ *          <p>
+ *              <i>branching</i>: the average number of direct sub classes of a non-leaf
+ *              class (the actual number is drawn from a geometric distribution);
+ *          </p>
+ *      </li>
+ *      <li><p><i>roots</i>: the number of classes without super classes;</p></li>
+ *      <li>
+ *          <p>
+ *              <i>multipleInheritance</i>: the ratio of classes having a second super class,
+ *              chosen among the classes generated before;
+ *          </p>
+ *      </li>
+ *      <li><p><i>properties</i>: the average number of properties having a class as domain;</p></li>
+ *      <li><p><i>instances</i>: the average number of direct instances of a class.</p></li>
+ *  </ul>
+ *  <p>
+ *      The classes are generated breadth first, so the ones generated before a class are never
+ *      its descendants, and they are named by one to three camel case words.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class TaxonomyGenerator {
+
+	private static final String[] WORDS = {
+		"Agent", "Event", "Process", "Object", "Person", "Organisation", "Place", "Document",
+		"Device", "Substance", "Cell", "Tissue", "Organ", "Disease", "Symptom", "Drug",
+		"Gene", "Protein", "Role", "Activity", "Measure", "Unit", "Quality", "Region",
+		"Vehicle", "Building", "Animal", "Plant", "Food", "Material", "Service", "Product" };
+
+	private int classes = 10000;
+	private double branching = 4.0;
+	private int roots = 1;
+	private double multipleInheritance = 0.05;
+	private double properties = 0.5;
+	private double instances = 1.0;
+	private long seed = 42L;
+	private String namespace = "http://www.essepuntato.it/kce/generated#";
+
+	public TaxonomyGenerator setClasses(int classes) {
+		this.classes = Math.max(1, classes);
+		return this;
+	}
+
+	public TaxonomyGenerator setBranching(double branching) {
+		this.branching = Math.max(1.0, branching);
+		return this;
+	}
+
+	public TaxonomyGenerator setRoots(int roots) {
+		this.roots = Math.max(1, roots);
+		return this;
+	}
+
+	public TaxonomyGenerator setMultipleInheritance(double multipleInheritance) {
+		this.multipleInheritance = Math.max(0.0, Math.min(1.0, multipleInheritance));
+		return this;
+	}
+
+	public TaxonomyGenerator setProperties(double properties) {
+		this.properties = Math.max(0.0, properties);
+		return this;
+	}
+
+	public TaxonomyGenerator setInstances(double instances) {
+		this.instances = Math.max(0.0, instances);
+		return this;
+	}
+
+	public TaxonomyGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public TaxonomyGenerator setNamespace(String namespace) {
+		this.namespace = namespace;
+		return this;
+	}
+
+	/**
+	 * This method generates the taxonomy. As the OWLAPITaxonomyMaker does, if there is more
+	 * than one root class, the root of the taxonomy is a fake category (see
+	 * {@link Engine#rootName}) having all the root classes as sub categories.
+	 *
+	 * @return the generated taxonomy.
+	 */
+	public HTaxonomy makeTaxonomy() {
+		final HTaxonomy result = new HTaxonomy();
+
+		try {
+			this.generate(new Sink() {
+				private List<Category> categories = new ArrayList<Category>();
+
+				public void category(int index, String name, int parent, int secondParent) 
+				throws NoCategoryException, RootException {
+					Category category = new Category(name);
+					result.addCategory(category);
+					this.categories.add(category);
+
+					if (parent >= 0) {
+						result.subCategoryOf(category, this.categories.get(parent));
+					} else if (roots == 1) {
+						result.setRoot(category);
+					} else {
+						if (result.getRoot() == null) {
+							Category root = new Category(Engine.rootName);
+							result.addCategory(root);
+							result.setRoot(root);
+						}
+						result.subCategoryOf(category, result.getRoot());
+					}
+
+					if (secondParent >= 0) {
+						result.subCategoryOf(category, this.categories.get(secondParent));
+					}
+				}
+
+				public void property(String name, int domain) throws NoCategoryException, NoPropertyException {
+					Property property = new Property(name);
+					result.addProperty(property);
+					result.setDomain(property, this.categories.get(domain));
+				}
+
+				public void instance(String name, int category) throws NoCategoryException, NoInstanceException {
+					Instance instance = new Instance(name);
+					result.addInstance(instance);
+					result.instanceOf(instance, this.categories.get(category));
+				}
+			});
+		} catch (Exception e) { /* Impossible, all the items are added before being used */
+			throw new IllegalStateException(e);
+		}
+
+		return result;
+	}
+
+	/**
+	 * This method writes the ontology as an OWL (RDF/XML) file, without keeping it in memory.
+	 * NB: the OWLAPITaxonomyMaker links every class to all its descendants as direct sub
+	 * categories, thus the taxonomy it makes from this file is not the one returned by
+	 * {@link #makeTaxonomy()}.
+	 *
+	 * @param file the file to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void writeOWL(File file) throws IOException {
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		final List<String> names = new ArrayList<String>();
+		try {
+			String ontology = this.namespace.endsWith("#") ? 
+					this.namespace.substring(0, this.namespace.length() - 1) : this.namespace;
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n");
+			writer.write("    xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"\n");
+			writer.write("    xmlns:owl=\"http://www.w3.org/2002/07/owl#\">\n");
+			writer.write("  <owl:Ontology rdf:about=\"" + escape(ontology) + "\"/>\n");
+
+			this.generate(new Sink() {
+				public void category(int index, String name, int parent, int secondParent) throws IOException {
+					names.add(name);
+					writer.write("  <owl:Class rdf:about=\"" + escape(name) + "\">");
+					if (parent >= 0) {
+						writer.write("<rdfs:subClassOf rdf:resource=\"" + escape(names.get(parent)) + "\"/>");
+					}
+					if (secondParent >= 0) {
+						writer.write("<rdfs:subClassOf rdf:resource=\"" + escape(names.get(secondParent)) + "\"/>");
+					}
+					writer.write("</owl:Class>\n");
+				}
+
+				public void property(String name, int domain) throws IOException {
+					writer.write("  <owl:ObjectProperty rdf:about=\"" + escape(name) + "\">");
+					writer.write("<rdfs:domain rdf:resource=\"" + escape(names.get(domain)) + "\"/>");
+					writer.write("</owl:ObjectProperty>\n");
+				}
+
+				public void instance(String name, int category) throws IOException {
+					writer.write("  <owl:NamedIndividual rdf:about=\"" + escape(name) + "\">");
+					writer.write("<rdf:type rdf:resource=\"" + escape(names.get(category)) + "\"/>");
+					writer.write("</owl:NamedIndividual>\n");
+				}
+			});
+
+			writer.write("</rdf:RDF>\n");
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/* The receiver of the generated items, in generation order */
+	private interface Sink {
+		public void category(int index, String name, int parent, int secondParent) throws Exception;
+		public void property(String name, int domain) throws Exception;
+		public void instance(String name, int category) throws Exception;
+	}
+
+	private void generate(Sink sink) throws Exception {
+		Random random = new Random(this.seed);
+		int rootCount = Math.min(this.roots, this.classes);
+
+		int generated = 0;
+		for (; generated < rootCount; generated++) {
+			sink.category(generated, this.name(generated, random), -1, -1);
+		}
+
+		/* The classes are expanded in generation order (i.e. breadth first), and each of them
+		 * has at least a sub class, so there is always a class to expand */
+		int next = 0;
+		while (generated < this.classes) {
+			/* A class has 1 + Geometric(branching - 1) sub classes, 'branching' on average */
+			int children = 1 + this.geometric(random, this.branching - 1.0);
+			for (int i = 0; i < children && generated < this.classes; i++) {
+				int secondParent = -1;
+				if (random.nextDouble() < this.multipleInheritance) {
+					secondParent = random.nextInt(generated);
+					if (secondParent == next) {
+						secondParent = -1;
+					}
+				}
+
+				sink.category(generated, this.name(generated, random), next, secondParent);
+				generated++;
+			}
+			next++;
+		}
+
+		int propertyCount = (int) Math.round(this.properties * this.classes);
+		for (int i = 0; i < propertyCount; i++) {
+			sink.property(this.namespace + "hasProperty" + i, random.nextInt(this.classes));
+		}
+
+		int instanceCount = (int) Math.round(this.instances * this.classes);
+		for (int i = 0; i < instanceCount; i++) {
+			sink.instance(this.namespace + "instance" + i, random.nextInt(this.classes));
+		}
+	}
+
+	/* The number of failures before a success, with 'mean' failures on average */
+	private int geometric(Random random, double mean) {
+		if (mean <= 0.0) {
+			return 0;
+		}
+		double p = 1.0 / (1.0 + mean);
+		return (int) Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - p));
+	}
+
+	private String name(int index, Random random) {
+		StringBuilder result = new StringBuilder(this.namespace);
+		int words = 1 + random.nextInt(3);
+		for (int i = 0; i < words; i++) {
+			result.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		result.append(index);
+		return result.toString();
+	}
+
+	private static String escape(String string) {
+		return string.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+	}
+
+	public static void main(String[] args) throws IOException {
+		TaxonomyGenerator generator = new TaxonomyGenerator();
+		String output = null;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-classes")) {
+					generator.setClasses(Integer.parseInt(args[++i]));
+				} else if (arg.equals("-branching")) {
+					generator.setBranching(Double.parseDouble(args[++i]));
+				} else if (arg.equals("-roots")) {
+					generator.setRoots(Integer.parseInt(args[++i]));
+				} else if (arg.equals("-multiple")) {
+					generator.setMultipleInheritance(Double.parseDouble(args[++i]));
+				} else if (arg.equals("-properties")) {
+					generator.setProperties(Double.parseDouble(args[++i]));
+				} else if (arg.equals("-instances")) {
+					generator.setInstances(Double.parseDouble(args[++i]));
+				} else if (arg.equals("-seed")) {
+					generator.setSeed(Long.parseLong(args[++i]));
+				} else if (arg.equals("-namespace")) {
+					generator.setNamespace(args[++i]);
+				} else {
+					output = arg;
+				}
+			}
+		} catch (RuntimeException e) {
+			output = null;
+		}
+
+		if (output == null) {
+			System.err.println("Usage: TaxonomyGenerator [-classes 10000] [-branching 4] [-roots 1] " +
+					"[-multiple 0.05] [-properties 0.5] [-instances 1] [-seed 42] [-namespace <iri>] <file.owl>");
+			System.exit(2);
+		}
+
+		generator.writeOWL(new File(output));
+	}
+}
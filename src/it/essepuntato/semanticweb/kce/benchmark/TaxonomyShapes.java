@@ -0,0 +1,146 @@
+package it.essepuntato.semanticweb.kce.benchmark;
+
+import it.essepuntato.taxonomy.Category;
+import it.essepuntato.taxonomy.HTaxonomy;
+import it.essepuntato.taxonomy.Instance;
+import it.essepuntato.taxonomy.Property;
+import it.essepuntato.taxonomy.exceptions.NoCategoryException;
+import it.essepuntato.taxonomy.exceptions.NoInstanceException;
+import it.essepuntato.taxonomy.exceptions.NoPropertyException;
+import it.essepuntato.taxonomy.exceptions.RootException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *  <p>
+ *      This class builds taxonomies of controlled shapes and sizes, used to measure the
+ *      algorithms on the worst cases of each of them:
+ *  </p>
+ *  <ul>
+ *      <li><p><i>chain</i>: every category has exactly one sub category (deep taxonomy);</p></li>
+ *      <li><p><i>wide</i>: all the categories are direct sub categories of the root (flat taxonomy);</p></li>
+ *      <li>
+ *          <p>
+ *              <i>diamond</i>: a ternary tree in which a third of the categories has a second
+ *              super category close to the first one (multiple inheritance);
+ *          </p>
+ *      </li>
+ *      <li>
+ *          <p>
+ *              <i>property</i>: a tree with five sub categories per category, three properties
+ *              and five instances per category on average.
+ *          </p>
+ *      </li>
+ *  </ul>
+ *
+ * @author Silvio Peroni
+ */
+public class TaxonomyShapes {
+
+	public static final String[] SHAPES = { "chain", "wide", "diamond", "property", "generated" };
+
+	private static final String BASE = "http://www.essepuntato.it/kce/benchmark/";
+
+	public static HTaxonomy make(String shape, int size) {
+		try {
+			if (shape.equals("chain")) {
+				return chain(size);
+			} else if (shape.equals("wide")) {
+				return wide(size);
+			} else if (shape.equals("diamond")) {
+				return diamond(size, 42L);
+			} else if (shape.equals("property")) {
+				return property(size, 42L);
+			} else if (shape.equals("generated")) {
+				return new TaxonomyGenerator().setClasses(size).makeTaxonomy();
+			} else {
+				throw new IllegalArgumentException("Unknown shape '" + shape + "'");
+			}
+		} catch (NoCategoryException e) { /* Impossible, all the items are added before being used */
+			throw new IllegalStateException(e);
+		} catch (RootException e) {
+			throw new IllegalStateException(e);
+		} catch (NoPropertyException e) {
+			throw new IllegalStateException(e);
+		} catch (NoInstanceException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static HTaxonomy chain(int size) throws NoCategoryException, RootException {
+		List<Category> categories = new ArrayList<Category>();
+		HTaxonomy result = create("chain", size, categories);
+		for (int i = 1; i < size; i++) {
+			result.subCategoryOf(categories.get(i), categories.get(i - 1));
+		}
+		return result;
+	}
+
+	private static HTaxonomy wide(int size) throws NoCategoryException, RootException {
+		List<Category> categories = new ArrayList<Category>();
+		HTaxonomy result = create("wide", size, categories);
+		for (int i = 1; i < size; i++) {
+			result.subCategoryOf(categories.get(i), categories.get(0));
+		}
+		return result;
+	}
+
+	private static HTaxonomy diamond(int size, long seed) throws NoCategoryException, RootException {
+		Random random = new Random(seed);
+		List<Category> categories = new ArrayList<Category>();
+		HTaxonomy result = create("diamond", size, categories);
+
+		/* Category i is a sub category of (i - 1) / 3 and, sometimes, of one of the three
+		 * categories following its parent, which are usually in the same level */
+		for (int i = 1; i < size; i++) {
+			int parent = (i - 1) / 3;
+			result.subCategoryOf(categories.get(i), categories.get(parent));
+
+			if (parent > 0 && random.nextInt(3) == 0) {
+				int other = parent + 1 + random.nextInt(3);
+				if (other < i) {
+					result.subCategoryOf(categories.get(i), categories.get(other));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static HTaxonomy property(int size, long seed)
+	throws NoCategoryException, RootException, NoPropertyException, NoInstanceException {
+		Random random = new Random(seed);
+		List<Category> categories = new ArrayList<Category>();
+		HTaxonomy result = create("property", size, categories);
+		for (int i = 1; i < size; i++) {
+			result.subCategoryOf(categories.get(i), categories.get((i - 1) / 5));
+		}
+
+		for (int i = 0; i < 3 * size; i++) {
+			Property property = new Property(BASE + "property#hasProperty" + i);
+			result.addProperty(property);
+			result.setDomain(property, categories.get(random.nextInt(size)));
+		}
+
+		for (int i = 0; i < 5 * size; i++) {
+			Instance instance = new Instance(BASE + "property#instance" + i);
+			result.addInstance(instance);
+			result.instanceOf(instance, categories.get(random.nextInt(size)));
+		}
+		return result;
+	}
+
+	/* The first category is the root */
+	private static HTaxonomy create(String shape, int size, List<Category> categories)
+	throws NoCategoryException, RootException {
+		HTaxonomy result = new HTaxonomy();
+		for (int i = 0; i < Math.max(1, size); i++) {
+			Category category = new Category(BASE + shape + "#Class" + i);
+			result.addCategory(category);
+			categories.add(category);
+		}
+		result.setRoot(categories.get(0));
+		return result;
+	}
+}
@@ -0,0 +1,395 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+import it.essepuntato.taxonomy.HTaxonomy;
+import it.essepuntato.taxonomy.maker.OWLAPITaxonomyMaker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  <p>
+ *      This class extracts the key concepts of many ontologies at the same time. Each source
+ *      (an ontology URL or a local file) is parsed and evaluated by a worker of a fixed pool,
+ *      and the result is written as a single JSON line (NDJSON), in completion order.
+ *  </p>
+ *  <p>
+ *      A source is admitted only when its estimated heap footprint fits in the heap budget
+ *      still available, so that few huge ontologies cannot exhaust the memory of the JVM.
+ *      The footprint of a local file is estimated from its size, while the one of a remote
+ *      source is the default one (see {@link #setUnknownSourceFootprint(long)}).
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class BatchEngine {
+
+	private static final long MEGABYTE = 1024L * 1024L;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long heapBudget = Runtime.getRuntime().maxMemory() / 2;
+	private long bytesPerSourceByte = 20L;
+	private long unknownSourceFootprint = 64L * MEGABYTE;
+	private boolean considerImportedOntologies = true;
+	private int numberOfKeyConcepts = -1;
+	private ResultCache resultCache = null;
+
+	public void setThreads(int threads) {
+		if (threads > 0) {
+			this.threads = threads;
+		}
+	}
+
+	/* The heap (in bytes) that can be used by all the ontologies evaluated at the same time */
+	public void setHeapBudget(long heapBudget) {
+		if (heapBudget >= MEGABYTE) {
+			this.heapBudget = heapBudget;
+		}
+	}
+
+	/* How many bytes of heap are needed, roughly, for each byte of a local source */
+	public void setBytesPerSourceByte(long bytesPerSourceByte) {
+		if (bytesPerSourceByte > 0) {
+			this.bytesPerSourceByte = bytesPerSourceByte;
+		}
+	}
+
+	public void setUnknownSourceFootprint(long unknownSourceFootprint) {
+		if (unknownSourceFootprint > 0) {
+			this.unknownSourceFootprint = unknownSourceFootprint;
+		}
+	}
+
+	public void setConsiderImportedOntologies(boolean considerImportedOntologies) {
+		this.considerImportedOntologies = considerImportedOntologies;
+	}
+
+	/* See Engine.setNumberOfKeyConceptsToExtract(int) */
+	public void setNumberOfKeyConceptsToExtract(int n) {
+		this.numberOfKeyConcepts = n;
+	}
+
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * This method evaluates all the sources and writes one JSON object per line in the output,
+	 * with the fields "source", "keyConcepts" and "milliseconds", or with the fields "source"
+	 * and "error" if the source could not be evaluated. It returns when all the sources have
+	 * been evaluated.
+	 *
+	 * @param sources the ontology URLs or local files to evaluate.
+	 * @param output where the results are written.
+	 * @return the number of sources that could not be evaluated.
+	 */
+	public int run(Iterator<String> sources, Writer output) throws InterruptedException {
+		int permits = toPermits(this.heapBudget);
+		Semaphore heap = new Semaphore(permits, true);
+		AtomicInteger failures = new AtomicInteger(0);
+
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads, new WorkerThreadFactory());
+		try {
+			while (sources.hasNext()) {
+				String source = sources.next();
+
+				/* An ontology bigger than the whole budget is evaluated alone */
+				int needed = Math.min(permits, toPermits(this.estimateFootprint(source)));
+				heap.acquire(needed);
+
+				try {
+					executor.execute(new Job(source, needed, heap, output, failures));
+				} catch (RuntimeException e) {
+					heap.release(needed);
+					throw e;
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			// Waiting for the remaining ontologies
+		}
+
+		return failures.get();
+	}
+
+	private long estimateFootprint(String source) {
+		File file = new File(source);
+		if (file.isFile()) {
+			return Math.max(MEGABYTE, file.length() * this.bytesPerSourceByte);
+		} else {
+			return this.unknownSourceFootprint;
+		}
+	}
+
+	private static int toPermits(long bytes) {
+		return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, bytes / MEGABYTE));
+	}
+
+	private static String toIRI(String source) {
+		File file = new File(source);
+		if (file.isFile()) {
+			return file.toURI().toString();
+		} else {
+			return source;
+		}
+	}
+
+	private List<String> evaluate(String source) {
+		HTaxonomy ht = new OWLAPITaxonomyMaker(toIRI(source), this.considerImportedOntologies).makeTaxonomy();
+
+		/* The pool already keeps all the cores busy, and each engine runs once */
+		Engine engine = new Engine(ht);
+		engine.setParallelism(1);
+		engine.setStageMemoization(false);
+		engine.setResultCache(this.resultCache);
+		engine.setWriteInfo(false);
+		if (this.numberOfKeyConcepts > 0) {
+			engine.setNumberOfKeyConceptsToExtract(this.numberOfKeyConcepts);
+		}
+		engine.run();
+
+		List<String> result = new ArrayList<String>(engine.getKeyConcepts());
+		Collections.sort(result);
+		return result;
+	}
+
+	private class Job implements Runnable {
+		private String source = null;
+		private int permits = 0;
+		private Semaphore heap = null;
+		private Writer output = null;
+		private AtomicInteger failures = null;
+
+		public Job(String source, int permits, Semaphore heap, Writer output, AtomicInteger failures) {
+			this.source = source;
+			this.permits = permits;
+			this.heap = heap;
+			this.output = output;
+			this.failures = failures;
+		}
+
+		public void run() {
+			String line = null;
+			try {
+				long start = System.currentTimeMillis();
+				List<String> keyConcepts = evaluate(this.source);
+
+				StringBuilder result = new StringBuilder();
+				result.append("{\"source\":").append(quote(this.source)).append(",\"keyConcepts\":[");
+				for (int i = 0; i < keyConcepts.size(); i++) {
+					if (i > 0) {
+						result.append(",");
+					}
+					result.append(quote(keyConcepts.get(i)));
+				}
+				result.append("],\"milliseconds\":").append(System.currentTimeMillis() - start).append("}");
+				line = result.toString();
+			} catch (Throwable e) {
+				this.failures.incrementAndGet();
+				System.err.println("[BatchEngine: run] ERROR - The source '" + this.source +
+						"' cannot be evaluated");
+				e.printStackTrace();
+				line = "{\"source\":" + quote(this.source) + ",\"error\":" + quote(String.valueOf(e)) + "}";
+			} finally {
+				this.heap.release(this.permits);
+			}
+
+			try {
+				synchronized (this.output) {
+					this.output.write(line);
+					this.output.write("\n");
+					this.output.flush();
+				}
+			} catch (IOException e) {
+				this.failures.incrementAndGet();
+				System.err.println("[BatchEngine: run] ERROR - The result of '" + this.source +
+						"' cannot be written");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	static String quote(String string) {
+		StringBuilder result = new StringBuilder(string.length() + 2);
+		result.append('"');
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			switch (c) {
+			case '"':
+				result.append("\\\"");
+				break;
+			case '\\':
+				result.append("\\\\");
+				break;
+			case '\n':
+				result.append("\\n");
+				break;
+			case '\r':
+				result.append("\\r");
+				break;
+			case '\t':
+				result.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					result.append(String.format("\\u%04x", (int) c));
+				} else {
+					result.append(c);
+				}
+			}
+		}
+		result.append('"');
+		return result.toString();
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+		private int count = 0;
+
+		public synchronized Thread newThread(Runnable r) {
+			Thread result = new Thread(r, "kce-batch-worker-" + (++count));
+			result.setDaemon(true);
+			return result;
+		}
+	}
+
+	/* It returns the non-empty lines (not starting with '#') of a reader, one at a time */
+	private static class SourceIterator implements Iterator<String> {
+		private BufferedReader reader = null;
+		private String next = null;
+
+		public SourceIterator(Reader reader) {
+			this.reader = new BufferedReader(reader);
+			this.advance();
+		}
+
+		private void advance() {
+			try {
+				do {
+					this.next = this.reader.readLine();
+				} while (this.next != null && (this.next.trim().length() == 0 || this.next.trim().startsWith("#")));
+
+				if (this.next != null) {
+					this.next = this.next.trim();
+				}
+			} catch (IOException e) {
+				System.err.println("[BatchEngine: SourceIterator] ERROR - The sources cannot be read");
+				e.printStackTrace();
+				this.next = null;
+			}
+		}
+
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		public String next() {
+			if (this.next == null) {
+				throw new NoSuchElementException();
+			}
+			String result = this.next;
+			this.advance();
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: BatchEngine [options] [sources-file]");
+		System.err.println("  Reads one ontology URL or file per line (from the standard input if no file");
+		System.err.println("  is specified) and writes one JSON result per line.");
+		System.err.println("  -o <file>      the output file (default: standard output)");
+		System.err.println("  -t <threads>   the number of ontologies evaluated at the same time");
+		System.err.println("  -m <megabytes> the heap budget shared by the ontologies being evaluated");
+		System.err.println("  -n <number>    the number of key concepts to extract");
+		System.err.println("  -noimports     do not consider the imported ontologies");
+		System.err.println("  -c <directory> the directory of the result cache");
+		System.err.println("  -cs <megabytes> the maximum size of the result cache (default: 1024)");
+	}
+
+	public static void main(String[] args) throws Exception {
+		BatchEngine batch = new BatchEngine();
+		String sourcesFile = null;
+		String outputFile = null;
+		String cacheDirectory = null;
+		long cacheSize = 1024L;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-o")) {
+					outputFile = args[++i];
+				} else if (arg.equals("-t")) {
+					batch.setThreads(Integer.parseInt(args[++i]));
+				} else if (arg.equals("-m")) {
+					batch.setHeapBudget(Long.parseLong(args[++i]) * MEGABYTE);
+				} else if (arg.equals("-n")) {
+					batch.setNumberOfKeyConceptsToExtract(Integer.parseInt(args[++i]));
+				} else if (arg.equals("-c")) {
+					cacheDirectory = args[++i];
+				} else if (arg.equals("-cs")) {
+					cacheSize = Long.parseLong(args[++i]);
+				} else if (arg.equals("-noimports")) {
+					batch.setConsiderImportedOntologies(false);
+				} else if (arg.startsWith("-") && arg.length() > 1) {
+					usage();
+					System.exit(2);
+				} else {
+					sourcesFile = arg;
+				}
+			}
+		} catch (RuntimeException e) {
+			usage();
+			System.exit(2);
+		}
+
+		if (cacheDirectory != null) {
+			batch.setResultCache(new ResultCache(new File(cacheDirectory), cacheSize * MEGABYTE));
+		}
+
+		Reader input = (sourcesFile == null || sourcesFile.equals("-") ?
+				new InputStreamReader(System.in, "UTF-8") :
+				new InputStreamReader(new FileInputStream(sourcesFile), "UTF-8"));
+
+		/* The algorithms log on the standard output, which is left to the results */
+		PrintStream stdout = System.out;
+		System.setOut(System.err);
+
+		Writer output = (outputFile == null ?
+				new OutputStreamWriter(stdout, "UTF-8") :
+				new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"));
+
+		int failures = 0;
+		try {
+			failures = batch.run(new SourceIterator(input), output);
+		} finally {
+			output.close();
+			input.close();
+		}
+
+		System.exit(failures == 0 ? 0 : 1);
+	}
+}
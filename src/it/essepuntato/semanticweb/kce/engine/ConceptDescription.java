@@ -0,0 +1,116 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+import it.essepuntato.taxonomy.Category;
+
+/**
+ *  <p>
+ *      The description of a category, as returned by {@link Engine#getDescriptions(java.util.Collection)}.
+ *      Each aspect (basic level, name simplicity, global density, local density and coverage)
+ *      has a ratio, i.e. the value of the category divided by the max value of all the
+ *      categories, and a grade, from 0 ("none") to 11 ("top"). The text of the description is
+ *      the same returned by {@link Engine#getDescription(Category)}.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class ConceptDescription {
+
+	public static final int BASIC_LEVEL = 0;
+	public static final int NAME_SIMPLICITY = 1;
+	public static final int GLOBAL_DENSITY = 2;
+	public static final int LOCAL_DENSITY = 3;
+	public static final int COVERAGE = 4;
+
+	/* The information of each aspect */
+	static final String[] KEYS = {
+		"NaturalCategoryBasicLevel", "NaturalCategoryNameGoodness", "DensityGlobal", "DensityLocal", "coverage" };
+
+	private static final String[] NAMES = {
+		"Basic level", "Name simplicity", "Global density", "Local density", "Coverage" };
+
+	private static final String[] GRADES = {
+		"none [0]", "unsatisfactory [1]", "very poor [2]", "poor [3]", "quite sufficient [4]", "fair [5]",
+		"fine [6]", "good [7]", "strong [8]", "very strong [9]", "excellent [10]", "top [10+]" };
+
+	private Category category = null;
+	private double[] ratios = null;
+	private int[] grades = null;
+
+	ConceptDescription(Category category, double[] ratios) {
+		this.category = category;
+		this.ratios = ratios.clone();
+		this.grades = new int[ratios.length];
+		for (int i = 0; i < ratios.length; i++) {
+			this.grades[i] = getGrade(ratios[i], 1.0);
+		}
+	}
+
+	public Category getCategory() {
+		return this.category;
+	}
+
+	public String getName() {
+		return this.category.getName();
+	}
+
+	/* The value of the aspect divided by the max value of all the categories */
+	public double getRatio(int aspect) {
+		return this.ratios[aspect];
+	}
+
+	/* From 0 (none) to 11 (top) */
+	public int getGrade(int aspect) {
+		return this.grades[aspect];
+	}
+
+	/* E.g. "good [7]" */
+	public String getGradeLabel(int aspect) {
+		return GRADES[this.grades[aspect]];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < NAMES.length; i++) {
+			if (i > 0) {
+				result.append('\n');
+			}
+			result.append(NAMES[i]).append(": ").append(GRADES[this.grades[i]]);
+		}
+		return result.toString();
+	}
+
+	/* The grade of a ratio, each one being a tenth of the max (NaN is "top") */
+	static int getGrade(double ratio, double max) {
+		double step = max / 10.0;
+		if (ratio == 0.0) {
+			return 0;
+		} else if (0.0 < ratio && ratio < step) {
+			return 1;
+		} else if (step <= ratio && ratio < 2 * step) {
+			return 2;
+		} else if (2 * step <= ratio && ratio < 3 * step) {
+			return 3;
+		} else if (3 * step <= ratio && ratio < 4 * step) {
+			return 4;
+		} else if (4 * step <= ratio && ratio < 5 * step) {
+			return 5;
+		} else if (5 * step <= ratio && ratio < 6 * step) {
+			return 6;
+		} else if (6 * step <= ratio && ratio < 7 * step) {
+			return 7;
+		} else if (7 * step <= ratio && ratio < 8 * step) {
+			return 8;
+		} else if (8 * step <= ratio && ratio < 9 * step) {
+			return 9;
+		} else if (9 * step <= ratio && ratio < 10 * step) {
+			return 10;
+		} else {
+			return 11;
+		}
+	}
+
+	static String getGradeLabel(double ratio, double max) {
+		return GRADES[getGrade(ratio, max)];
+	}
+}
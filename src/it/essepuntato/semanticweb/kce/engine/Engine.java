@@ -2,38 +2,63 @@ package it.essepuntato.semanticweb.kce.engine;
 
 import it.essepuntato.facility.math.MathFacility;
 import it.essepuntato.semanticweb.kce.algorithm.Coverage;
+import it.essepuntato.semanticweb.kce.algorithm.CoverageRankings;
 import it.essepuntato.semanticweb.kce.algorithm.Density;
 import it.essepuntato.semanticweb.kce.algorithm.IAlgorithm;
+import it.essepuntato.semanticweb.kce.algorithm.IStageAlgorithm;
 import it.essepuntato.semanticweb.kce.algorithm.NaturalCategory;
+import it.essepuntato.semanticweb.kce.algorithm.ScoreTable;
 import it.essepuntato.taxonomy.Category;
 import it.essepuntato.taxonomy.HTaxonomy;
 import it.essepuntato.taxonomy.exceptions.NoCategoryException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * @author Silvio Peroni
  */
 public class Engine {
 	
-	private boolean maxRetrieved = false;
-	private double maxBasicLevel = 0.0;
-	private double maxNameSimplicity = 0.0;
-	private double maxGlobalDensity = 0.0;
-	private double maxLocalDensity = 0.0;
-	private double maxCoverage = 0.0;
+	/* The categories of the taxonomy by name, built when first needed after each run */
+	private Map<String,Category> categoriesByName = null;
+	
+	/* The values described by getDescriptions, and their max values, set after each run */
+	private ScoreTable descriptionScores = null;
+	private double[] descriptionMaxima = null;
     
     private HTaxonomy ht = null;
     private List<IAlgorithm> algorithms = null;
     private List<Map<String,String>> parameters = null;
     private boolean sequence = true;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private ResultCache resultCache = null;
+    private boolean stageMemoization = false;
+    private String[] lastStageKeys = null;
+    private String[] lastStageFingerprints = null;
+    private List<EngineListener> listeners = new CopyOnWriteArrayList<EngineListener>();
+    private boolean writeInfo = true;
+    private ScoreTable scores = null;
+    private KeyConceptResult keyConceptResult = null;
+    private String lastTaxonomyDigest = null;
     
     public final static String rootName = "http://www.essepuntato.it/OntoAlgorithm#ESSEPUNTATO";
     
@@ -78,38 +103,514 @@ public class Engine {
     	}
     }
     
+    /* NB: this method modifies what previously has been specified in the parameters. With a
+     * positive number, the next runs work out also the key concepts for every number from 1
+     * to it (see getKeyConcepts(int)), keeping the difference between n and k. Each number
+     * costs a whole selection of the key concepts, thus the coverage algorithm takes about
+     * 'max' times longer (e.g. 0.1 s without rankings and 2.5 s with 50 rankings on a
+     * taxonomy of 2,800 categories). The number is at most Coverage.MAX_RANKINGS */
+    public void setNumberOfKeyConceptRankings(int max) {
+    	Map<String,String> coverage = this.parameters.get(2);
+    	if (coverage != null) {
+    		coverage.put("rankings", new Integer(Math.max(0, max)).toString());
+    	}
+    }
+    
     public void setSequence(boolean bool) {
         this.sequence = bool;
     }
     
+    /* NB: with a parallelism of 1 all the algorithms are executed one after another, in the
+     * order in which they have been specified */
+    public void setParallelism(int parallelism) {
+    	if (parallelism > 0) {
+    		this.parallelism = parallelism;
+    	}
+    }
+    
+    /* NB: the cache is consulted before running the algorithms, using as key the content of
+     * the taxonomy together with the algorithms and their parameters. It is not used if some
+     * algorithm does not declare the information it produces (see IStageAlgorithm) */
+    public void setResultCache(ResultCache resultCache) {
+    	this.resultCache = resultCache;
+    }
+    
+    /* NB: when enabled, an algorithm is not executed again if the taxonomy, its parameters and
+     * the information it needs have not changed since the previous run of this engine, and the
+     * values it produced then are still in the scores. It is disabled by default, since each
+     * run has to work out the digest of the whole taxonomy: enable it only if the engine is
+     * going to run more than once */
+    public void setStageMemoization(boolean stageMemoization) {
+    	this.stageMemoization = stageMemoization;
+    	this.lastStageKeys = null;
+    	this.lastStageFingerprints = null;
+    }
+    
+    /* NB: when enabled (default), the values worked out by the algorithms are added to the
+     * information of the categories of the taxonomy, otherwise they are available through
+     * getScores() only. The values worked out before an algorithm that is not an
+     * IStageAlgorithm are added anyway, since it reads them from the information */
+    public void setWriteInfo(boolean writeInfo) {
+    	this.writeInfo = writeInfo;
+    }
+    
+    /* The key concepts found by the last run, or null if the engine has not run yet or if no
+     * algorithm added them to the scores (see IStageAlgorithm) */
+    public KeyConceptResult getKeyConceptResult() {
+    	return this.keyConceptResult;
+    }
+    
+    /* The values worked out by the last run, or null if the engine has not run yet */
+    public ScoreTable getScores() {
+    	return this.scores;
+    }
+    
+    public void addEngineListener(EngineListener listener) {
+    	this.listeners.add(listener);
+    }
+    
+    public void removeEngineListener(EngineListener listener) {
+    	this.listeners.remove(listener);
+    }
+    
     public HTaxonomy run() {
-    	maxRetrieved = false;
-        Hashtable<String,Object> result = new Hashtable<String,Object>();
+    	categoriesByName = null;
+    	descriptionScores = null;
+    	descriptionMaxima = null;
+    	keyConceptResult = null;
+    	long wallStart = System.nanoTime();
+    	
+    	boolean cacheable = this.resultCache != null && this.isCacheable();
+    	String taxonomyDigest = null;
+    	if (cacheable || this.stageMemoization) {
+    		taxonomyDigest = TaxonomyDigest.digest(this.ht);
+    	}
+    	
+    	String cacheKey = null;
+    	if (cacheable) {
+    		cacheKey = this.getCacheKey(taxonomyDigest);
+    		Map<String,Map<String,String>> cached = this.resultCache.get(cacheKey);
+    		if (cached != null) {
+    			ScoreTable cachedScores = new ScoreTable(this.ht);
+    			cachedScores.readInfo(cached, this.getProducedInfo());
+    			cachedScores.setRankings(Coverage.RANKINGS, this.readRankings(cachedScores, cached));
+    			this.scores = cachedScores;
+    			this.keyConceptResult = KeyConceptResult.fromScores(cachedScores, rootName);
+    			if (this.writeInfo) {
+    				this.restoreInfo(this.ht, cached);
+    			}
+    			this.fireRunFinished(new RunMetrics(
+    					true, System.nanoTime() - wallStart, new ArrayList<StageMetrics>()));
+    			return this.ht;
+    		}
+    	}
+    	
+    	StageMetrics[] stageMetrics = new StageMetrics[this.algorithms.size()];
+    	HTaxonomy newHt = this.execute(this.stageMemoization ? taxonomyDigest : null, stageMetrics);
+    	if (this.scores.getLabels("CoverageIs") != null) {
+    		this.keyConceptResult = KeyConceptResult.fromScores(this.scores, rootName);
+    	}
+    	
+    	if (cacheKey != null) {
+    		Map<String,Map<String,String>> info = this.scores.toInfo(this.getProducedInfo());
+    		this.writeRankings(info);
+    		this.resultCache.put(cacheKey, info);
+    	}
+    	
+    	this.fireRunFinished(new RunMetrics(
+    			false, System.nanoTime() - wallStart, Arrays.asList(stageMetrics)));
+    	return newHt;
+    }
+    
+    private HTaxonomy execute(String taxonomyDigest, StageMetrics[] stageMetrics) {
+        /* I find, for each algorithm, the previous ones it has to wait for */
+        List<Set<Integer>> dependencies = this.findDependencies();
         
-        Iterator<IAlgorithm> algorithmIte = this.algorithms.iterator();
-        Iterator<Map<String,String>> paramenterIte = this.parameters.iterator();
+        int size = this.algorithms.size();
+        String[] stageKeys = new String[size];
+        String[] stageFingerprints = new String[size];
+        if (this.lastStageKeys == null || this.lastStageKeys.length != size) {
+        	this.lastStageKeys = new String[size];
+        	this.lastStageFingerprints = new String[size];
+        }
         
-        /* I execute all the algorithm */
-        HTaxonomy newHt = this.ht;
+        /* The values of the previous run are kept if the taxonomy has not changed, so that the
+         * algorithms that are not executed again can be skipped */
+        ScoreTable table = 
+        	(taxonomyDigest != null && taxonomyDigest.equals(this.lastTaxonomyDigest) && this.scores != null ? 
+        			this.scores : 
+        			new ScoreTable(this.ht));
+        this.scores = table;
         
-        while (algorithmIte.hasNext()) {
-            IAlgorithm algo = algorithmIte.next();
-            String algoName = algo.getName();
-            Map<String,String> parameters = paramenterIte.next();
-            
-            Map<String,Object> algorithmResult = algo.evaluate(newHt, parameters);
-            result.put(algoName + ".taxonomy", algorithmResult.get("taxonomy"));
-            
-            if (this.sequence) {
-                newHt = (HTaxonomy) algorithmResult.get("taxonomy");
-            }
-        }
+        int threads = Math.min(this.parallelism, size);
+        ExecutorService executor = 
+        	(threads > 1 ? Executors.newFixedThreadPool(threads, new StageThreadFactory()) : null);
         
-        return newHt;
+        boolean completed = false;
+        try {
+        	/* I execute all the algorithm: the independent ones can run at the same time */
+        	List<Future<StageResult>> stages = new ArrayList<Future<StageResult>>();
+        	for (int i = 0; i < size; i++) {
+        		List<Future<StageResult>> waitFor = new ArrayList<Future<StageResult>>();
+        		for (Integer dependency : dependencies.get(i)) {
+        			waitFor.add(stages.get(dependency));
+        		}
+        		
+        		Stage stage = new Stage(
+        				i, waitFor, table, taxonomyDigest, stageKeys, stageFingerprints, stageMetrics);
+        		if (executor == null) {
+        			FutureTask<StageResult> task = new FutureTask<StageResult>(stage);
+        			task.run();
+        			stages.add(task);
+        		} else {
+        			stages.add(executor.submit(stage));
+        		}
+        	}
+        	
+        	HTaxonomy newHt = this.ht;
+        	for (Future<StageResult> stage : stages) {
+        		HTaxonomy stageHt = this.waitForStage(stage).taxonomy;
+        		if (this.sequence) {
+        			newHt = stageHt;
+        		}
+        	}
+        	
+        	if (this.writeInfo) {
+        		table.writeInfo(newHt, this.getProducedInfo());
+        	}
+        	
+        	completed = true;
+        	return newHt;
+        } finally {
+        	if (executor != null) {
+        		executor.shutdown();
+        	}
+        	
+        	/* If something went wrong, the next run will execute all the algorithms */
+        	this.lastStageKeys = (completed ? stageKeys : null);
+        	this.lastStageFingerprints = (completed ? stageFingerprints : null);
+        	this.lastTaxonomyDigest = (completed ? taxonomyDigest : null);
+        }
+    }
+    
+    private void fireRunFinished(RunMetrics metrics) {
+    	for (EngineListener listener : this.listeners) {
+    		listener.runFinished(metrics);
+    	}
+    }
+    
+    private String getCacheKey(String taxonomyDigest) {
+    	TaxonomyDigest digest = new TaxonomyDigest();
+    	digest.add(taxonomyDigest);
+    	for (int i = 0; i < this.algorithms.size(); i++) {
+    		IAlgorithm algorithm = this.algorithms.get(i);
+    		digest.add(algorithm.getClass().getName()).add(algorithm.getName());
+    		digest.addParameters(this.parameters.get(i));
+    	}
+    	return digest.getDigest();
+    }
+    
+    private Set<String> getProducedInfo() {
+    	return this.getProducedInfo(0, this.algorithms.size());
+    }
+    
+    /* The information produced by the algorithms, from 'from' (included) to 'to' (excluded),
+     * that declare it */
+    private Set<String> getProducedInfo(int from, int to) {
+    	Set<String> result = new TreeSet<String>();
+    	for (IAlgorithm algorithm : this.algorithms.subList(from, to)) {
+    		if (algorithm instanceof IStageAlgorithm) {
+    			result.addAll(((IStageAlgorithm) algorithm).getProducedInfo());
+    		}
+    	}
+    	return result;
+    }
+    
+    /* The information needed by the algorithms, from 'from' (included) to 'to' (excluded),
+     * that declare it */
+    private Set<String> getRequiredInfo(int from, int to) {
+    	Set<String> result = new TreeSet<String>();
+    	for (IAlgorithm algorithm : this.algorithms.subList(from, to)) {
+    		if (algorithm instanceof IStageAlgorithm) {
+    			result.addAll(((IStageAlgorithm) algorithm).getRequiredInfo());
+    		}
+    	}
+    	return result;
+    }
+    
+    /* The cached values are the ones produced by the algorithms, thus all of them have to
+     * declare what they produce */
+    private boolean isCacheable() {
+    	for (IAlgorithm algorithm : this.algorithms) {
+    		if (!(algorithm instanceof IStageAlgorithm)) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+    
+    /* The rankings of the coverage, if any, are cached as information of the categories,
+     * which is not added to the taxonomy (see restoreInfo) */
+    private void writeRankings(Map<String,Map<String,String>> info) {
+    	CoverageRankings rankings = this.scores.getRankings(Coverage.RANKINGS);
+    	if (rankings != null) {
+    		for (Map.Entry<String,String> numbers : rankings.toInfo().entrySet()) {
+    			Map<String,String> categoryInfo = info.get(numbers.getKey());
+    			if (categoryInfo != null) {
+    				categoryInfo.put(Coverage.RANKINGS, numbers.getValue());
+    			}
+    		}
+    	}
+    }
+    
+    private CoverageRankings readRankings(ScoreTable table, Map<String,Map<String,String>> cached) {
+    	try {
+    		return CoverageRankings.fromInfo(table, cached, Coverage.RANKINGS);
+    	} catch (NumberFormatException e) {
+    		System.err.println("[Engine: run] WARNING - The cached rankings are not valid.");
+    		return null;
+    	}
+    }
+    
+    /* The information previously produced by the algorithms is replaced by the cached one */
+    private void restoreInfo(HTaxonomy hTaxonomy, Map<String,Map<String,String>> cached) {
+    	Set<String> produced = this.getProducedInfo();
+    	
+    	try {
+    		for (Category category : hTaxonomy.getAllCategories()) {
+    			Map<String,String> info = hTaxonomy.getAllInfo(category);
+    			info.keySet().removeAll(produced);
+    			
+    			Map<String,String> cachedInfo = cached.get(category.getName());
+    			for (String key : produced) {
+    				if (cachedInfo != null && cachedInfo.containsKey(key)) {
+    					info.put(key, cachedInfo.get(key));
+    				}
+    			}
+    		}
+    	} catch (NoCategoryException e) {
+    		throw new IllegalStateException(e);
+    	}
+    }
+    
+    /* An algorithm depends on a previous one if it needs some information produced by the
+     * previous one, if it produces some information the previous one needs, or if they both
+     * produce the same information. An algorithm that does not declare what it needs and
+     * produces (i.e. that is not an IStageAlgorithm) depends on all the previous ones, and
+     * all the following ones depend on it */
+    private List<Set<Integer>> findDependencies() {
+    	List<Set<Integer>> result = new ArrayList<Set<Integer>>();
+    	
+    	for (int i = 0; i < this.algorithms.size(); i++) {
+    		IAlgorithm current = this.algorithms.get(i);
+    		Set<Integer> dependencies = new TreeSet<Integer>();
+    		
+    		for (int j = 0; j < i; j++) {
+    			IAlgorithm previous = this.algorithms.get(j);
+    			if (!(current instanceof IStageAlgorithm) || !(previous instanceof IStageAlgorithm)) {
+    				dependencies.add(j);
+    			} else {
+    				IStageAlgorithm currentStage = (IStageAlgorithm) current;
+    				IStageAlgorithm previousStage = (IStageAlgorithm) previous;
+    				if (
+    						!Collections.disjoint(currentStage.getRequiredInfo(), previousStage.getProducedInfo()) ||
+    						!Collections.disjoint(currentStage.getProducedInfo(), previousStage.getRequiredInfo()) ||
+    						!Collections.disjoint(currentStage.getProducedInfo(), previousStage.getProducedInfo())) {
+    					dependencies.add(j);
+    				}
+    			}
+    		}
+    		
+    		result.add(dependencies);
+    	}
+    	
+    	return result;
+    }
+    
+    private StageResult waitForStage(Future<StageResult> stage) {
+    	try {
+    		return stage.get();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new RuntimeException("[Engine: run] ERROR - Interrupted while waiting for an algorithm", e);
+    	} catch (ExecutionException e) {
+    		Throwable cause = e.getCause();
+    		if (cause instanceof RuntimeException) {
+    			throw (RuntimeException) cause;
+    		} else if (cause instanceof Error) {
+    			throw (Error) cause;
+    		} else {
+    			throw new RuntimeException(cause);
+    		}
+    	}
+    }
+    
+    private static class StageResult {
+    	private HTaxonomy taxonomy = null;
+    	/* The digest of the information produced by the algorithm (null without memoization or
+    	 * if the algorithm does not declare the information it produces) */
+    	private String fingerprint = null;
+    	
+    	public StageResult(HTaxonomy taxonomy, String fingerprint) {
+    		this.taxonomy = taxonomy;
+    		this.fingerprint = fingerprint;
+    	}
+    }
+    
+    /* It executes an algorithm as soon as all the algorithms it depends on have finished. The
+     * taxonomy evaluated is the one returned by the last of them (or the initial one if the
+     * algorithms are not in sequence or if it does not depend on any other algorithm) */
+    private class Stage implements Callable<StageResult> {
+    	private int index = 0;
+    	private List<Future<StageResult>> waitFor = null;
+    	private ScoreTable scores = null;
+    	private String taxonomyDigest = null;
+    	private String[] stageKeys = null;
+    	private String[] stageFingerprints = null;
+    	private StageMetrics[] stageMetrics = null;
+    	
+    	public Stage(
+    			int index, 
+    			List<Future<StageResult>> waitFor, 
+    			ScoreTable scores,
+    			String taxonomyDigest, 
+    			String[] stageKeys, 
+    			String[] stageFingerprints,
+    			StageMetrics[] stageMetrics) {
+    		this.index = index;
+    		this.waitFor = waitFor;
+    		this.scores = scores;
+    		this.taxonomyDigest = taxonomyDigest;
+    		this.stageKeys = stageKeys;
+    		this.stageFingerprints = stageFingerprints;
+    		this.stageMetrics = stageMetrics;
+    	}
+    	
+		public StageResult call() {
+			IAlgorithm algorithm = algorithms.get(this.index);
+			Map<String,String> parameters = Engine.this.parameters.get(this.index);
+			
+			/* The key of the stage depends on the taxonomy, on the parameters and on what the
+			 * previous algorithms produced. The algorithms that do not declare what they
+			 * produce, and the ones following them, are always executed */
+			TaxonomyDigest key = null;
+			if (this.taxonomyDigest != null && algorithm instanceof IStageAlgorithm) {
+				key = new TaxonomyDigest();
+				key.add(this.taxonomyDigest).add(algorithm.getClass().getName()).add(algorithm.getName());
+				key.addParameters(parameters);
+			}
+			
+			HTaxonomy input = ht;
+			for (Future<StageResult> previous : this.waitFor) {
+				StageResult previousResult = waitForStage(previous);
+				if (sequence) {
+					input = previousResult.taxonomy;
+				}
+				if (key != null && previousResult.fingerprint == null) {
+					key = null;
+				} else if (key != null) {
+					key.add(previousResult.fingerprint);
+				}
+			}
+			
+			long wallStart = System.nanoTime();
+			long cpuStart = StageMetrics.currentThreadCpuTime();
+			long allocatedStart = StageMetrics.currentThreadAllocatedBytes();
+			
+			StageResult result = null;
+			Map<String,Long> counters = null;
+			boolean skipped = false;
+			
+			if (key == null) {
+				Map<String,Object> algorithmResult = this.evaluate(algorithm, input, parameters);
+				counters = this.getCounters(algorithmResult);
+				result = new StageResult((HTaxonomy) algorithmResult.get("taxonomy"), null);
+			} else {
+				Set<String> produced = ((IStageAlgorithm) algorithm).getProducedInfo();
+				String stageKey = key.getDigest();
+				this.stageKeys[this.index] = stageKey;
+				
+				if (stageKey.equals(lastStageKeys[this.index])) {
+					String fingerprint = 
+						new TaxonomyDigest().addScores(this.scores, produced).getDigest();
+					if (fingerprint.equals(lastStageFingerprints[this.index])) {
+						result = new StageResult(input, fingerprint);
+						skipped = true;
+					}
+				}
+				
+				if (result == null) {
+					Map<String,Object> algorithmResult = this.evaluate(algorithm, input, parameters);
+					counters = this.getCounters(algorithmResult);
+					HTaxonomy output = (HTaxonomy) algorithmResult.get("taxonomy");
+					String fingerprint = 
+						new TaxonomyDigest().addScores(this.scores, produced).getDigest();
+					result = new StageResult(output, fingerprint);
+				}
+				
+				this.stageFingerprints[this.index] = result.fingerprint;
+			}
+			
+			/* The work of the threads used by the algorithm, if any, is added to this one */
+			StageMetrics metrics = new StageMetrics(
+					algorithm.getName(), 
+					skipped, 
+					System.nanoTime() - wallStart, 
+					StageMetrics.addCounter(
+							StageMetrics.difference(cpuStart, StageMetrics.currentThreadCpuTime()), 
+							counters, "workerCpuTime"), 
+					StageMetrics.addCounter(
+							StageMetrics.difference(allocatedStart, StageMetrics.currentThreadAllocatedBytes()), 
+							counters, "workerAllocatedBytes"), 
+					counters);
+			this.stageMetrics[this.index] = metrics;
+			for (EngineListener listener : listeners) {
+				listener.stageFinished(metrics);
+			}
+			
+			return result;
+		}
+		
+		/* The algorithms that are not an IStageAlgorithm do not use the scores: they read the
+		 * values of the previous algorithms from the information of the categories, and the
+		 * following algorithms read from there the information they need */
+		private Map<String,Object> evaluate(IAlgorithm algorithm, HTaxonomy input, Map<String,String> parameters) {
+			if (algorithm instanceof IStageAlgorithm) {
+				return ((IStageAlgorithm) algorithm).evaluate(input, this.scores, parameters);
+			}
+			
+			this.scores.writeInfo(input, getProducedInfo(0, this.index));
+			Map<String,Object> result = algorithm.evaluate(input, parameters);
+			HTaxonomy output = (HTaxonomy) result.get("taxonomy");
+			this.scores.readInfo(
+					(output == null ? input : output), getRequiredInfo(this.index + 1, algorithms.size()));
+			return result;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private Map<String,Long> getCounters(Map<String,Object> algorithmResult) {
+			Object counters = algorithmResult.get("metrics");
+			return (counters instanceof Map ? (Map<String,Long>) counters : null);
+		}
+    }
+    
+    private static class StageThreadFactory implements ThreadFactory {
+    	private int count = 0;
+    	
+		public synchronized Thread newThread(Runnable r) {
+			Thread result = new Thread(r, "kce-engine-stage-" + (++count));
+			result.setDaemon(true);
+			return result;
+		}
     }
     
     private void setDefaultParameters() {
-    	parameters = new ArrayList<Map<String,String>>();
+    	parameters = getDefaultParameters();
+    }
+    
+    /* The parameters of the default algorithms (density, natural category and coverage) */
+    public static List<Map<String,String>> getDefaultParameters() {
+    	List<Map<String,String>> parameters = new ArrayList<Map<String,String>>();
 		
 		Map<String,String> densityParameters = new HashMap<String, String>();
 		densityParameters.put("globalDensityWeight", "1");
@@ -123,6 +624,7 @@ public class Engine {
 		densityParameters.put("ratio", "0.1");
 		densityParameters.put("threshold", "0.5");
 		densityParameters.put("globalDensityWeightLocally", "0.5");
+		densityParameters.put("distinctSubclasses", "no");
 		parameters.add(densityParameters);
 		
 		Map<String,String> naturalParameters = new HashMap<String, String>();
@@ -130,6 +632,7 @@ public class Engine {
 		naturalParameters.put("nameWeight", "1");
 		naturalParameters.put("threshold", "0.5");
 		naturalParameters.put("compoundRatio", "0.3");
+		naturalParameters.put("maxPaths", "0");
 		parameters.add(naturalParameters);
 		
 		Map<String,String> coverageParameters = new HashMap<String, String>();
@@ -149,99 +652,60 @@ public class Engine {
 		coverageParameters.put("globalDensityWeight", "0.572");
 		coverageParameters.put("globalPopularityWeight", "0");
 		coverageParameters.put("coverageDistribuctionThreshold", "3000");
+		coverageParameters.put("approximateCoverage", "no");
 		parameters.add(coverageParameters);
+		
+		return parameters;
     }
     
-    private void findTaxomonylimits(HTaxonomy hTaxonomy) {
-		for (Category aClass : hTaxonomy.getAllCategories()) {
-			findMax(aClass, hTaxonomy);
+	public String getDescription(String name) {
+		Category category = getCategoryByName(name);
+		if (category != null) {
+			return getDescription(category);
+		} else {
+			return "";
 		}
 	}
 	
-	private void findMax(Category category, HTaxonomy ht) {
-		try {
-			Double basicLevel = new Double(ht.getInfo(category, "NaturalCategoryBasicLevel"));
-			if (basicLevel > maxBasicLevel) {
-				maxBasicLevel = basicLevel;
-			}
-			
-			Double nameSimplicity = new Double(ht.getInfo(category, "NaturalCategoryNameGoodness"));
-			if (nameSimplicity > maxNameSimplicity) {
-				maxNameSimplicity = nameSimplicity;
-			}
-			
-			Double globalDensity = new Double(ht.getInfo(category, "DensityGlobal"));
-			if (globalDensity > maxGlobalDensity) {
-				maxGlobalDensity = globalDensity;
-			}
-			
-			Double localDensity = new Double(ht.getInfo(category, "DensityLocal"));
-			if (localDensity > maxLocalDensity) {
-				maxLocalDensity = localDensity;
-			}
-			
-			Double coverage = new Double(ht.getInfo(category, "coverage"));
-			if (coverage > maxCoverage) {
-				maxCoverage = coverage;
+	/* It returns null if the category is not in the taxonomy. The categories added after the
+	 * index has been built are looked for in the taxonomy */
+	public Category getCategoryByName(String name) {
+		if (ht == null) {
+			return null;
+		}
+		
+		Map<String,Category> index = getCategoriesByName();
+		Category result = index.get(name);
+		if (result == null) {
+			try {
+				result = ht.getCategoryByName(name);
+			} catch (NoCategoryException e) {
+				result = null;
 			}
-		} catch (NumberFormatException e) {
-			// DO NOTHING
-		} catch (NoCategoryException e) {
-			// DO NOTHING
 		}
+		return result;
 	}
 	
-	public String getDescription(String name) {
-		if (ht != null) {
-			try {
-				Category category = ht.getCategoryByName(name);
-				return getDescription(category);
-			} catch (NoCategoryException e) {
-				return "";
+	/* NB: the keys are the names of the categories themselves, thus no string is copied */
+	private synchronized Map<String,Category> getCategoriesByName() {
+		if (categoriesByName == null) {
+			Collection<Category> categories = ht.getAllCategories();
+			categoriesByName = new HashMap<String,Category>(categories.size() * 2);
+			for (Category category : categories) {
+				if (!categoriesByName.containsKey(category.getName())) {
+					categoriesByName.put(category.getName(), category);
+				}
 			}
-		} else {
-			return "";
 		}
+		return categoriesByName;
 	}
 	
+	/* The same description of getDescriptions, as a string: it is empty if the category is not
+	 * in the taxonomy or misses some of the values described */
 	public String getDescription(Category category) {
-		if (!maxRetrieved && ht != null) {
-			findTaxomonylimits(ht);
-			maxRetrieved = true;
-		}
-		
-		String result = "";
-		
-		try {
-			Double basicLevel = new Double(ht.getInfo(category, "NaturalCategoryBasicLevel"));
-			result += "Basic level: " + 
-				getDescriptionAccordingToMax(ratioToMax(basicLevel, maxBasicLevel), 1.0);
-			
-			Double nameSimplicity = new Double(ht.getInfo(category, "NaturalCategoryNameGoodness"));
-			result += "\nName simplicity: " + 
-				getDescriptionAccordingToMax(
-						ratioToMax(nameSimplicity, maxNameSimplicity), 1.0);
-			
-			Double globalDensity = new Double(ht.getInfo(category, "DensityGlobal"));
-			result += "\nGlobal density: " + 
-				getDescriptionAccordingToMax(
-					ratioToMax(globalDensity, maxGlobalDensity), 1.0);
-			
-			Double localDensity = new Double(ht.getInfo(category, "DensityLocal"));
-			result += "\nLocal density: " + 
-				getDescriptionAccordingToMax(
-						ratioToMax(localDensity, maxLocalDensity), 1.0);
-			
-			Double coverage = new Double(ht.getInfo(category, "coverage"));
-			result += "\nCoverage: " + 
-				getDescriptionAccordingToMax(
-						ratioToMax(coverage, maxCoverage), 1.0);
-			
-		} catch (Exception e) {
-			// DO NOTHING
-		}
-		
-		return result;
+		ConceptDescription description = 
+			getDescriptions(Collections.singleton(category)).get(category);
+		return (description == null ? "" : description.toString());
 	}
 	
 	private double ratioToMax(double number, double max) {
@@ -255,45 +719,134 @@ public class Engine {
             );
 	}
 	
-	private String getDescriptionAccordingToMax(double ratio, double max) {
-		double step = max / 10.0;
-		if (ratio == 0.0) {
-			return "none [0]";
-		} else if (0.0 < ratio && ratio < step) {
-			return "unsatisfactory [1]";
-		} else if (step <= ratio && ratio < 2 * step) {
-			return "very poor [2]";
-		} else if (2 * step <= ratio && ratio < 3 * step) {
-			return "poor [3]";
-		} else if (3 * step <= ratio && ratio < 4 * step) {
-			return "quite sufficient [4]";
-		} else if (4 * step <= ratio && ratio < 5 * step) {
-			return "fair [5]";
-		} else if (5 * step <= ratio && ratio < 6 * step) {
-			return "fine [6]";
-		} else if (6 * step <= ratio && ratio < 7 * step) {
-			return "good [7]";
-		} else if (7 * step <= ratio && ratio < 8 * step) {
-			return "strong [8]";
-		} else if (8 * step <= ratio && ratio < 9 * step) {
-			return "very strong [9]";
-		} else if (9 * step <= ratio && ratio < 10 * step) {
-			return "excellent [10]";
+	/**
+	 * This method describes the categories specified, from the scores of the last run (or, if
+	 * the engine has not run, from the information of the taxonomy, read once). The max
+	 * values of all the categories are the ones the algorithms recorded while working out the
+	 * scores (see {@link ScoreTable#getMax(String)}).
+	 *
+	 * @param categories the categories to describe.
+	 * @return the descriptions of the categories, in the order specified. The categories
+	 * that are not in the taxonomy or miss some of the values described are not included
+	 * (the same ones for which {@link #getDescription(Category)} returns an empty string).
+	 */
+	public Map<Category,ConceptDescription> getDescriptions(Collection<Category> categories) {
+		Map<Category,ConceptDescription> result = new LinkedHashMap<Category,ConceptDescription>();
+		if (ht == null) {
+			return result;
+		}
+		
+		ScoreTable table = getDescriptionScores();
+		double[][] columns = new double[ConceptDescription.KEYS.length][];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = table.getScores(ConceptDescription.KEYS[i]);
+		}
+		
+		double[] ratios = new double[columns.length];
+		for (Category category : categories) {
+			int index = table.getIndex(category);
+			boolean described = (index >= 0);
+			for (int i = 0; described && i < columns.length; i++) {
+				described = (columns[i] != null && !Double.isNaN(columns[i][index]));
+				if (described) {
+					ratios[i] = ratioToMax(columns[i][index], descriptionMaxima[i]);
+				}
+			}
+			if (described) {
+				result.put(category, new ConceptDescription(category, ratios));
+			}
+		}
+		return result;
+	}
+	
+	/* The descriptions of the key concepts, in rank order after a run (the ids of its result are
+	 * the indexes of its scores, thus no name is looked up), otherwise sorted by name */
+	public Map<Category,ConceptDescription> getKeyConceptDescriptions() {
+		List<Category> keyConcepts = new ArrayList<Category>();
+		if (keyConceptResult != null) {
+			for (int rank = 0; rank < keyConceptResult.size(); rank++) {
+				keyConcepts.add(scores.getCategory(keyConceptResult.getId(rank)));
+			}
 		} else {
-			return "top [10+]";
+			for (String name : new TreeSet<String>(getKeyConcepts())) {
+				Category category = getCategoryByName(name);
+				if (category != null) {
+					keyConcepts.add(category);
+				}
+			}
 		}
+		return getDescriptions(keyConcepts);
+	}
+	
+	/* The scores described and their max values (which are not lower than 0) */
+	private synchronized ScoreTable getDescriptionScores() {
+		if (descriptionScores == null) {
+			ScoreTable table = scores;
+			for (String key : ConceptDescription.KEYS) {
+				if (table != null && table.getScores(key) == null) {
+					table = null;
+				}
+			}
+			if (table == null) {
+				table = ScoreTable.fromInfo(ht, Arrays.asList(ConceptDescription.KEYS));
+			}
+			
+			/* The columns the algorithms filled in without recording their max (e.g. the ones
+			 * of the algorithms that don't use a score table) are scanned */
+			double[] maxima = new double[ConceptDescription.KEYS.length];
+			for (int i = 0; i < maxima.length; i++) {
+				double max = table.getMax(ConceptDescription.KEYS[i]);
+				if (Double.isNaN(max)) {
+					double[] column = table.getScores(ConceptDescription.KEYS[i]);
+					for (int j = 0; column != null && j < column.length; j++) {
+						if (column[j] > maxima[i]) {
+							maxima[i] = column[j];
+						}
+					}
+				} else if (max > 0.0) {
+					maxima[i] = max;
+				}
+			}
+			
+			descriptionScores = table;
+			descriptionMaxima = maxima;
+		}
+		return descriptionScores;
+	}
+	
+	/* The key concepts the last run (or the cached result it used) worked out for the number
+	 * specified (see setNumberOfKeyConceptRankings), or null if they are not available */
+	public Set<String> getKeyConcepts(int number) {
+		CoverageRankings rankings = (scores != null ? scores.getRankings(Coverage.RANKINGS) : null);
+		if (rankings == null || !rankings.contains(number)) {
+			return null;
+		}
+		
+		Set<String> result = new HashSet<String>();
+		for (Category category : rankings.getSelection(number)) {
+			if (!category.getName().equals(rootName)) {
+				result.add(category.getName());
+			}
+		}
+		return result;
 	}
 	
+	/* After a run, the key concepts are the ones of its result */
 	public Set<String> getKeyConcepts() {
 		Set<String> result = new HashSet<String>();
 		
-		if (ht != null) {
+		if (keyConceptResult != null) {
+			result.addAll(keyConceptResult.getNames());
+		} else if (ht != null) {
 			Iterator<Category> ite = ht.getAllCategories().iterator();
 			while (ite.hasNext()) {
 				Category currentCategory = ite.next();
 				if (!currentCategory.getName().equals(rootName)) {
 					try {
-						String coverageIs = ht.getInfo(currentCategory, "CoverageIs");
+						String coverageIs = 
+							(scores != null && scores.getLabels("CoverageIs") != null ?
+									scores.getLabel(currentCategory, "CoverageIs") :
+									ht.getInfo(currentCategory, "CoverageIs"));
 						if (coverageIs != null && coverageIs.equals("yes")) {
 							result.add(currentCategory.getName());
 						}
@@ -0,0 +1,29 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+/**
+ *  <p>
+ *      A listener of the executions of an {@link Engine} (see
+ *      {@link Engine#addEngineListener(EngineListener)}). Since independent algorithms run
+ *      at the same time, the methods of a listener can be called by different threads
+ *      concurrently.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public interface EngineListener {
+	/**
+	 * This method is called when an algorithm has been executed, or has been skipped because
+	 * its result was already in the taxonomy.
+	 *
+	 * @param metrics the measures of the algorithm execution.
+	 */
+	public void stageFinished(StageMetrics metrics);
+
+	/**
+	 * This method is called when all the algorithms have been executed, or when the result
+	 * has been retrieved from the result cache.
+	 *
+	 * @param metrics the measures of the whole execution.
+	 */
+	public void runFinished(RunMetrics metrics);
+}
@@ -0,0 +1,110 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+import it.essepuntato.semanticweb.kce.algorithm.ScoreTable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ *  <p>
+ *      The key concepts found by a run of the engine, ranked by their final score (the
+ *      "criteria" of the coverage algorithm, from the greatest) and then by name. Each key
+ *      concept has its name, its score and its id, i.e. its index in the scores of the run
+ *      (see {@link ScoreTable#getIndex(it.essepuntato.taxonomy.Category)}). The result cannot
+ *      be modified, thus it can be returned and shared as is.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class KeyConceptResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String[] names = null;
+	private int[] ids = null;
+	private double[] scores = null;
+
+	private KeyConceptResult(String[] names, int[] ids, double[] scores) {
+		this.names = names;
+		this.ids = ids;
+		this.scores = scores;
+	}
+
+	/* The key concepts are the categories whose information "CoverageIs" is "yes", excluding
+	 * the root specified (NaN is the score of the ones without "criteria") */
+	static KeyConceptResult fromScores(ScoreTable table, String rootName) {
+		String[] coverageIs = table.getLabels("CoverageIs");
+		final double[] criteria = table.getScores("criteria");
+
+		List<Integer> keyConcepts = new ArrayList<Integer>();
+		for (int i = 0; coverageIs != null && i < coverageIs.length; i++) {
+			if ("yes".equals(coverageIs[i]) && !table.getCategory(i).getName().equals(rootName)) {
+				keyConcepts.add(i);
+			}
+		}
+
+		final ScoreTable scoreTable = table;
+		Collections.sort(keyConcepts, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				double scoreA = (criteria == null ? Double.NaN : criteria[a.intValue()]);
+				double scoreB = (criteria == null ? Double.NaN : criteria[b.intValue()]);
+				int result = Double.compare(scoreB, scoreA);
+				return (result != 0 ?
+						result :
+						scoreTable.getCategory(a.intValue()).getName().compareTo(
+								scoreTable.getCategory(b.intValue()).getName()));
+			}
+		});
+
+		int size = keyConcepts.size();
+		String[] names = new String[size];
+		int[] ids = new int[size];
+		double[] scores = new double[size];
+		for (int i = 0; i < size; i++) {
+			ids[i] = keyConcepts.get(i).intValue();
+			names[i] = table.getCategory(ids[i]).getName();
+			scores[i] = (criteria == null ? Double.NaN : criteria[ids[i]]);
+		}
+		return new KeyConceptResult(names, ids, scores);
+	}
+
+	public int size() {
+		return this.names.length;
+	}
+
+	/* The rank goes from 0 (the best key concept) to size() - 1 */
+	public String getName(int rank) {
+		return this.names[rank];
+	}
+
+	public int getId(int rank) {
+		return this.ids[rank];
+	}
+
+	public double getScore(int rank) {
+		return this.scores[rank];
+	}
+
+	/* The names of all the key concepts, in rank order */
+	public List<String> getNames() {
+		return Collections.unmodifiableList(Arrays.asList(this.names));
+	}
+
+	/* The names of the best k key concepts (or of all of them, if they are less), in rank order */
+	public List<String> getTop(int k) {
+		return this.getNames().subList(0, Math.max(0, Math.min(k, this.names.length)));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < this.names.length; i++) {
+			result.append(i + 1).append(". ").append(this.names[i]).append(" [").append(this.scores[i]).append("]\n");
+		}
+		return result.toString();
+	}
+}
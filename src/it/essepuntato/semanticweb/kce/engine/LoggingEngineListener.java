@@ -0,0 +1,29 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+import java.io.PrintStream;
+
+/**
+ * An {@link EngineListener} that prints the measures of every execution.
+ *
+ * @author Silvio Peroni
+ */
+public class LoggingEngineListener implements EngineListener {
+
+	private PrintStream out = null;
+
+	public LoggingEngineListener() {
+		this(System.err);
+	}
+
+	public LoggingEngineListener(PrintStream out) {
+		this.out = out;
+	}
+
+	public void stageFinished(StageMetrics metrics) {
+		// The stages are printed with the whole run
+	}
+
+	public void runFinished(RunMetrics metrics) {
+		this.out.println("[Engine] " + metrics);
+	}
+}
@@ -0,0 +1,265 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  <p>
+ *      This class stores on disk the results of the executions of the engine, i.e. the
+ *      information added by the algorithms to every category (scores and key concepts). Each
+ *      result is a file of the cache directory, named after its key (see
+ *      {@link Engine#setResultCache(ResultCache)}).
+ *  </p>
+ *  <p>
+ *      When the files of the cache exceed the maximum size, the least recently used ones are
+ *      deleted. A cache can be shared by several engines, also running at the same time.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class ResultCache {
+
+	private static final String HEADER = "KCE-RESULT-CACHE 1";
+	private static final String EXTENSION = ".kce";
+
+	private File directory = null;
+	private long maxSize = 0L;
+	private long size = 0L;
+
+	/* From the least to the most recently used entry, with the size of its file */
+	private LinkedHashMap<String,Long> entries = new LinkedHashMap<String,Long>(16, 0.75f, true);
+
+	public ResultCache(File directory, long maxSize) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("The cache directory '" + directory + "' cannot be created.");
+		}
+		this.directory = directory;
+		this.maxSize = maxSize;
+
+		/* The entries already in the directory are considered in order of last use */
+		File[] files = directory.listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File one, File two) {
+				long diff = one.lastModified() - two.lastModified();
+				return (diff < 0 ? -1 : (diff > 0 ? 1 : 0));
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isFile() && name.endsWith(EXTENSION)) {
+				this.entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+				this.size += file.length();
+			}
+		}
+		this.evict();
+	}
+
+	/**
+	 * This method returns the information of all the categories stored with the key
+	 * specified, or null if there is no such entry in the cache.
+	 *
+	 * @param key the key of the entry.
+	 * @return a map from category names to their information, or null.
+	 */
+	public synchronized Map<String,Map<String,String>> get(String key) {
+		if (!this.entries.containsKey(key)) {
+			return null;
+		}
+
+		File file = this.getFile(key);
+		try {
+			Map<String,Map<String,String>> result = read(file);
+			file.setLastModified(System.currentTimeMillis());
+			return result;
+		} catch (IOException e) {
+			System.err.println("[ResultCache: get] WARNING - The entry '" + key + "' cannot be read.");
+			this.remove(key);
+			return null;
+		}
+	}
+
+	public synchronized void put(String key, Map<String,Map<String,String>> info) {
+		File file = this.getFile(key);
+		File tmp = new File(this.directory, key + ".tmp");
+		try {
+			write(tmp, info);
+			if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("The file '" + file + "' cannot be replaced.");
+			}
+
+			Long previous = this.entries.put(key, file.length());
+			this.size += file.length() - (previous == null ? 0L : previous.longValue());
+			this.evict();
+		} catch (IOException e) {
+			System.err.println("[ResultCache: put] WARNING - The entry '" + key + "' cannot be written.");
+			tmp.delete();
+		}
+	}
+
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String,Long>> ite = this.entries.entrySet().iterator();
+		while (this.size > this.maxSize && ite.hasNext()) {
+			Map.Entry<String,Long> entry = ite.next();
+			this.getFile(entry.getKey()).delete();
+			this.size -= entry.getValue().longValue();
+			ite.remove();
+		}
+	}
+
+	private void remove(String key) {
+		Long length = this.entries.remove(key);
+		if (length != null) {
+			this.size -= length.longValue();
+		}
+		this.getFile(key).delete();
+	}
+
+	private File getFile(String key) {
+		return new File(this.directory, key + EXTENSION);
+	}
+
+	/* Each line contains the name of a category followed by its information as 'key=value'
+	 * fields, all separated by tabs */
+	private static void write(File file, Map<String,Map<String,String>> info) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			writer.write(HEADER);
+			writer.write("\n");
+			for (Map.Entry<String,Map<String,String>> category : info.entrySet()) {
+				writer.write(escape(category.getKey()));
+				for (Map.Entry<String,String> entry : category.getValue().entrySet()) {
+					writer.write("\t");
+					writer.write(escape(entry.getKey()));
+					writer.write("=");
+					writer.write(escape(entry.getValue()));
+				}
+				writer.write("\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static Map<String,Map<String,String>> read(File file) throws IOException {
+		Map<String,Map<String,String>> result = new HashMap<String,Map<String,String>>();
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			if (!HEADER.equals(reader.readLine())) {
+				throw new IOException("The file '" + file + "' is not a cache entry.");
+			}
+
+			String line = reader.readLine();
+			while (line != null) {
+				List<String> fields = split(line, '\t');
+				Map<String,String> info = new HashMap<String,String>();
+				for (int i = 1; i < fields.size(); i++) {
+					String field = fields.get(i);
+					int index = field.indexOf('=');
+					if (index < 0) {
+						throw new IOException("The file '" + file + "' is corrupted.");
+					}
+					info.put(unescape(field.substring(0, index)), unescape(field.substring(index + 1)));
+				}
+				result.put(unescape(fields.get(0)), info);
+				line = reader.readLine();
+			}
+		} finally {
+			reader.close();
+		}
+
+		return result;
+	}
+
+	private static List<String> split(String line, char separator) {
+		List<String> result = new ArrayList<String>();
+		int start = 0;
+		int index = line.indexOf(separator);
+		while (index >= 0) {
+			result.add(line.substring(start, index));
+			start = index + 1;
+			index = line.indexOf(separator, start);
+		}
+		result.add(line.substring(start));
+		return result;
+	}
+
+	private static String escape(String string) {
+		StringBuilder result = new StringBuilder(string.length());
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			switch (c) {
+			case '\\':
+				result.append("\\\\");
+				break;
+			case '\t':
+				result.append("\\t");
+				break;
+			case '\n':
+				result.append("\\n");
+				break;
+			case '\r':
+				result.append("\\r");
+				break;
+			case '=':
+				result.append("\\e");
+				break;
+			default:
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	private static String unescape(String string) {
+		if (string.indexOf('\\') < 0) {
+			return string;
+		}
+
+		StringBuilder result = new StringBuilder(string.length());
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c == '\\' && i + 1 < string.length()) {
+				char next = string.charAt(++i);
+				switch (next) {
+				case 't':
+					result.append('\t');
+					break;
+				case 'n':
+					result.append('\n');
+					break;
+				case 'r':
+					result.append('\r');
+					break;
+				case 'e':
+					result.append('=');
+					break;
+				default:
+					result.append(next);
+				}
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+}
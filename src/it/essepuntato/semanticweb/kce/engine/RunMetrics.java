@@ -0,0 +1,84 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  <p>
+ *      The measures of an execution of the engine. CPU time and allocated bytes are the sums
+ *      of the ones of the algorithms executed (-1 if the JVM cannot measure them).
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class RunMetrics {
+
+	private boolean cacheHit = false;
+	private long wallTime = 0L;
+	private List<StageMetrics> stages = null;
+
+	RunMetrics(boolean cacheHit, long wallTime, List<StageMetrics> stages) {
+		this.cacheHit = cacheHit;
+		this.wallTime = wallTime;
+		this.stages = Collections.unmodifiableList(new ArrayList<StageMetrics>(stages));
+	}
+
+	/* True if the result has been retrieved from the result cache */
+	public boolean isCacheHit() {
+		return this.cacheHit;
+	}
+
+	/* In nanoseconds */
+	public long getWallTime() {
+		return this.wallTime;
+	}
+
+	/* In nanoseconds */
+	public long getCpuTime() {
+		long result = 0L;
+		for (StageMetrics stage : this.stages) {
+			if (stage.getCpuTime() < 0) {
+				return -1L;
+			}
+			result += stage.getCpuTime();
+		}
+		return result;
+	}
+
+	public long getAllocatedBytes() {
+		long result = 0L;
+		for (StageMetrics stage : this.stages) {
+			if (stage.getAllocatedBytes() < 0) {
+				return -1L;
+			}
+			result += stage.getAllocatedBytes();
+		}
+		return result;
+	}
+
+	/* The measures of the algorithms, in the order in which they have been specified */
+	public List<StageMetrics> getStages() {
+		return this.stages;
+	}
+
+	/* The sum of the counter specified over all the algorithms */
+	public long getCounter(String name) {
+		long result = 0L;
+		for (StageMetrics stage : this.stages) {
+			result += stage.getCounter(name);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append("run").append(this.cacheHit ? " (cache hit)" : "");
+		result.append(": wall ").append(this.wallTime / 1000000L).append(" ms");
+		for (StageMetrics stage : this.stages) {
+			result.append("\n\t").append(stage);
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,131 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ *  <p>
+ *      The measures of the execution of an algorithm by the engine: wall time, CPU time and
+ *      allocated bytes of the thread that executed it, and the counters reported by the
+ *      algorithm itself (see {@link it.essepuntato.semanticweb.kce.algorithm.IAlgorithm#evaluate}).
+ *      If the algorithm reports the CPU time and the allocated bytes of the other threads it
+ *      used (the counters "workerCpuTime" and "workerAllocatedBytes"), they are added to the
+ *      ones of the thread. CPU time and allocated bytes are -1 if the JVM cannot measure them.
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class StageMetrics {
+
+	private String algorithm = null;
+	private boolean skipped = false;
+	private long wallTime = 0L;
+	private long cpuTime = -1L;
+	private long allocatedBytes = -1L;
+	private Map<String,Long> counters = null;
+
+	StageMetrics(
+			String algorithm,
+			boolean skipped,
+			long wallTime,
+			long cpuTime,
+			long allocatedBytes,
+			Map<String,Long> counters) {
+		this.algorithm = algorithm;
+		this.skipped = skipped;
+		this.wallTime = wallTime;
+		this.cpuTime = cpuTime;
+		this.allocatedBytes = allocatedBytes;
+		this.counters = Collections.unmodifiableMap(
+				counters == null ? new TreeMap<String,Long>() : new TreeMap<String,Long>(counters));
+	}
+
+	/* The name of the algorithm */
+	public String getAlgorithm() {
+		return this.algorithm;
+	}
+
+	/* True if the algorithm has not been executed since its result was already available */
+	public boolean isSkipped() {
+		return this.skipped;
+	}
+
+	/* In nanoseconds */
+	public long getWallTime() {
+		return this.wallTime;
+	}
+
+	/* In nanoseconds */
+	public long getCpuTime() {
+		return this.cpuTime;
+	}
+
+	public long getAllocatedBytes() {
+		return this.allocatedBytes;
+	}
+
+	public Map<String,Long> getCounters() {
+		return this.counters;
+	}
+
+	/* It returns the counter specified, or 0 if the algorithm did not report it */
+	public long getCounter(String name) {
+		Long result = this.counters.get(name);
+		return (result == null ? 0L : result.longValue());
+	}
+
+	@Override
+	public String toString() {
+		return this.algorithm + (this.skipped ? " (skipped)" : "") +
+			": wall " + (this.wallTime / 1000000L) + " ms" +
+			", cpu " + (this.cpuTime < 0 ? "n/a" : (this.cpuTime / 1000000L) + " ms") +
+			", allocated " + (this.allocatedBytes < 0 ? "n/a" : (this.allocatedBytes / 1024L) + " KB") +
+			(this.counters.isEmpty() ? "" : ", " + this.counters);
+	}
+
+	/* The CPU time, in nanoseconds, of the current thread, or -1 */
+	static long currentThreadCpuTime() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			if (bean.isCurrentThreadCpuTimeSupported()) {
+				return bean.getCurrentThreadCpuTime();
+			}
+		} catch (UnsupportedOperationException e) {
+			// Not measurable
+		}
+		return -1L;
+	}
+
+	/* The bytes allocated so far by the current thread, or -1 */
+	static long currentThreadAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+						Thread.currentThread().getId());
+			}
+		} catch (UnsupportedOperationException e) {
+			// Not measurable
+		} catch (LinkageError e) {
+			// Not a HotSpot JVM
+		}
+		return -1L;
+	}
+
+	static long difference(long start, long end) {
+		return (start < 0 || end < 0 ? -1L : end - start);
+	}
+
+	/* It adds the counter specified, if reported, to the measure (-1 if any of them is -1) */
+	static long addCounter(long measure, Map<String,Long> counters, String name) {
+		Long counter = (counters == null ? null : counters.get(name));
+		if (counter == null) {
+			return measure;
+		} else {
+			return (measure < 0 || counter.longValue() < 0 ? -1L : measure + counter.longValue());
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package it.essepuntato.semanticweb.kce.engine;
+
+import it.essepuntato.semanticweb.kce.algorithm.ScoreTable;
+import it.essepuntato.taxonomy.Category;
+import it.essepuntato.taxonomy.HTaxonomy;
+import it.essepuntato.taxonomy.Instance;
+import it.essepuntato.taxonomy.Property;
+import it.essepuntato.taxonomy.exceptions.NoCategoryException;
+import it.essepuntato.taxonomy.exceptions.NoInstanceException;
+import it.essepuntato.taxonomy.exceptions.NoPropertyException;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ *  <p>
+ *      This class works out a digest of the content of a taxonomy (the root, the categories
+ *      with their direct sub categories, the properties with their domains and the instances
+ *      with their direct categories) and of a set of parameters. The digest does not depend
+ *      on the order in which the taxonomy has been built, nor on the information added to
+ *      it by the algorithms (which can be digested on its own, see
+ *      {@link #addInfo(HTaxonomy, Collection)}).
+ *  </p>
+ *
+ * @author Silvio Peroni
+ */
+public class TaxonomyDigest {
+
+	private MessageDigest digest = null;
+
+	public TaxonomyDigest() {
+		try {
+			this.digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) { /* Every JVM has to support SHA-1 */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public TaxonomyDigest addTaxonomy(HTaxonomy ht) {
+		this.add("root").add(ht.getRoot() == null ? "" : ht.getRoot().getName());
+
+		try {
+			this.add("categories");
+			for (Category c : sortByName(ht.getAllCategories())) {
+				this.add(c.getName());
+				for (Category sub : sortByName(ht.getDirectSubCategories(c))) {
+					this.add(">").add(sub.getName());
+				}
+			}
+
+			this.add("properties");
+			for (Property p : sortByName(ht.getAllProperties())) {
+				this.add(p.getName());
+				for (Category domain : sortByName(ht.getDomain(p))) {
+					this.add(">").add(domain.getName());
+				}
+			}
+
+			this.add("instances");
+			for (Instance i : sortByName(ht.getAllInstances())) {
+				this.add(i.getName());
+				for (Category c : sortByName(ht.getDirectCategoriesByInstance(i))) {
+					this.add(">").add(c.getName());
+				}
+			}
+		} catch (NoCategoryException e) { /* Impossible, all the items come from the taxonomy */
+			throw new IllegalStateException(e);
+		} catch (NoPropertyException e) {
+			throw new IllegalStateException(e);
+		} catch (NoInstanceException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return this;
+	}
+
+	/* The information of the categories specified, in the order of the category names */
+	public TaxonomyDigest addInfo(HTaxonomy ht, Collection<String> keys) {
+		List<String> sortedKeys = new ArrayList<String>(new TreeSet<String>(keys));
+
+		this.add("info");
+		try {
+			for (Category c : sortByName(ht.getAllCategories())) {
+				this.add(c.getName());
+				Map<String,String> info = ht.getAllInfo(c);
+				for (String key : sortedKeys) {
+					String value = info.get(key);
+					if (value != null) {
+						this.add(key).add(value);
+					}
+				}
+			}
+		} catch (NoCategoryException e) { /* Impossible, all the categories come from the taxonomy */
+			throw new IllegalStateException(e);
+		}
+
+		return this;
+	}
+
+	/* The columns specified of a score table, in the order of the category indexes (a missing
+	 * label is digested as an empty one) */
+	public TaxonomyDigest addScores(ScoreTable scores, Collection<String> keys) {
+		this.add("scores");
+		for (String key : new TreeSet<String>(keys)) {
+			double[] column = scores.getScores(key);
+			String[] labels = scores.getLabels(key);
+			if (column != null) {
+				this.add(key);
+				for (double value : column) {
+					this.add(Double.doubleToLongBits(value));
+				}
+			} else if (labels != null) {
+				this.add(key);
+				for (String label : labels) {
+					this.add(label == null ? "" : label);
+				}
+			}
+		}
+		return this;
+	}
+
+	/* The parameters are considered in the order of their names */
+	public TaxonomyDigest addParameters(Map<String,String> parameters) {
+		this.add("parameters");
+		if (parameters != null) {
+			for (Map.Entry<String,String> entry : new TreeMap<String,String>(parameters).entrySet()) {
+				this.add(entry.getKey().trim()).add(entry.getValue() == null ? "" : entry.getValue().trim());
+			}
+		}
+		return this;
+	}
+
+	public TaxonomyDigest add(String string) {
+		try {
+			byte[] bytes = string.getBytes("UTF-8");
+			this.digest.update((byte) (bytes.length >>> 24));
+			this.digest.update((byte) (bytes.length >>> 16));
+			this.digest.update((byte) (bytes.length >>> 8));
+			this.digest.update((byte) bytes.length);
+			this.digest.update(bytes);
+		} catch (UnsupportedEncodingException e) { /* Every JVM has to support UTF-8 */
+			throw new IllegalStateException(e);
+		}
+		return this;
+	}
+
+	public TaxonomyDigest add(long value) {
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			this.digest.update((byte) (value >>> shift));
+		}
+		return this;
+	}
+
+	/* NB: after this call the digest starts again from scratch */
+	public String getDigest() {
+		StringBuilder result = new StringBuilder();
+		for (byte b : this.digest.digest()) {
+			result.append(Character.forDigit((b >> 4) & 0xF, 16));
+			result.append(Character.forDigit(b & 0xF, 16));
+		}
+		return result.toString();
+	}
+
+	public static String digest(HTaxonomy ht) {
+		return new TaxonomyDigest().addTaxonomy(ht).getDigest();
+	}
+
+	private static <T> List<T> sortByName(Collection<T> items) {
+		TreeMap<String,T> sorted = new TreeMap<String,T>();
+		for (T item : items) {
+			sorted.put(item.toString(), item);
+		}
+		return new ArrayList<T>(sorted.values());
+	}
+}